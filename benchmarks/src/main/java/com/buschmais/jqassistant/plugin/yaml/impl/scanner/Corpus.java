@@ -0,0 +1,198 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The YAML files used as input of the benchmarks. Each corpus stresses
+ * another part of the scanner, the generated corpora have roughly the same
+ * number of keys and values.
+ */
+public enum Corpus {
+
+    /**
+     * A single mapping with many keys.
+     */
+    WIDE {
+        @Override
+        List<byte[]> files() {
+            StringBuilder builder = new StringBuilder();
+
+            for (int i = 0; i < SIZE; i++) {
+                builder.append("key").append(i).append(": value").append(i).append('\n');
+            }
+
+            return file(builder);
+        }
+    },
+
+    /**
+     * Mappings nested into each other, each with a few values next to the
+     * nested mapping.
+     */
+    DEEP {
+        @Override
+        List<byte[]> files() {
+            StringBuilder builder = new StringBuilder();
+
+            for (int document = 0; document < SIZE / (DEPTH * 4); document++) {
+                builder.append("---\n");
+
+                for (int level = 0; level < DEPTH; level++) {
+                    indent(builder, level).append("a: 1\n");
+                    indent(builder, level).append("b: 2\n");
+                    indent(builder, level).append("c: 3\n");
+                    indent(builder, level).append("level").append(level).append(":\n");
+                }
+
+                indent(builder, DEPTH).append("leaf: value\n");
+            }
+
+            return file(builder);
+        }
+    },
+
+    /**
+     * A single key with a long sequence of scalars as value.
+     */
+    LONG_SEQUENCE {
+        @Override
+        List<byte[]> files() {
+            StringBuilder builder = new StringBuilder("items:\n");
+
+            for (int i = 0; i < SIZE; i++) {
+                builder.append("  - item").append(i).append('\n');
+            }
+
+            return file(builder);
+        }
+    },
+
+    /**
+     * A stream of many small documents.
+     */
+    MULTI_DOCUMENT {
+        @Override
+        List<byte[]> files() {
+            StringBuilder builder = new StringBuilder();
+
+            for (int i = 0; i < SIZE / 5; i++) {
+                builder.append("---\n")
+                       .append("name: service-").append(i).append('\n')
+                       .append("version: 1.").append(i).append('\n')
+                       .append("tags:\n")
+                       .append("  - a\n")
+                       .append("  - b\n");
+            }
+
+            return file(builder);
+        }
+    },
+
+    /**
+     * A single generated manifest of about 100 MB, a stream of documents
+     * like the output of a template engine, with a few non-ASCII values.
+     */
+    LARGE {
+        @Override
+        List<byte[]> files() {
+            StringBuilder builder = new StringBuilder();
+
+            for (int i = 0; builder.length() < 100 * 1024 * 1024; i++) {
+                builder.append("---\n")
+                       .append("apiVersion: apps/v1\n")
+                       .append("kind: Deployment\n")
+                       .append("metadata:\n")
+                       .append("  name: service-").append(i).append('\n')
+                       .append("  labels:\n")
+                       .append("    app: service-").append(i).append('\n')
+                       .append("    owner: ").append(i % 10 == 0 ? "équipe-données" : "platform").append('\n')
+                       .append("spec:\n")
+                       .append("  replicas: ").append(i % 5 + 1).append('\n')
+                       .append("  template:\n")
+                       .append("    spec:\n")
+                       .append("      containers:\n")
+                       .append("        - name: service-").append(i).append('\n')
+                       .append("          image: registry.example.com/service:1.").append(i).append('\n')
+                       .append("          args: [--port, \"8080\", --verbose]\n");
+            }
+
+            return file(builder);
+        }
+    },
+
+    /**
+     * The files used by the tests of the plugin, including the invalid
+     * ones and the examples of the YAML specification.
+     */
+    PROBES {
+        @Override
+        List<byte[]> files() {
+            URL probes = Corpus.class.getResource("/probes");
+
+            if (probes == null) {
+                throw new IllegalStateException("The probes are not on the classpath of the benchmarks.");
+            }
+
+            try {
+                URI uri = probes.toURI();
+
+                if ("jar".equals(uri.getScheme())) {
+                    try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+                        return read(jar.provider().getPath(uri));
+                    }
+                }
+                return read(Paths.get(uri));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    static final int SIZE = 10_000;
+    static final int DEPTH = 50;
+
+    /**
+     * Returns the contents of the files of this corpus.
+     */
+    abstract List<byte[]> files();
+
+    private static List<byte[]> file(StringBuilder content) {
+        return Collections.singletonList(content.toString().getBytes(UTF_8));
+    }
+
+    private static StringBuilder indent(StringBuilder builder, int level) {
+        for (int i = 0; i < level; i++) {
+            builder.append("  ");
+        }
+        return builder;
+    }
+
+    private static List<byte[]> read(Path directory) throws IOException {
+        List<byte[]> files = new ArrayList<>();
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                files.add(Files.readAllBytes(path));
+            }
+        }
+        return files;
+    }
+}
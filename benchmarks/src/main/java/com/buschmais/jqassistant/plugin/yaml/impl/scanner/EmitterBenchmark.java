@@ -0,0 +1,176 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.buschmais.jqassistant.core.scanner.api.Scanner;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+/**
+ * Passes the already parsed events of a corpus to {@link YAMLEmitter},
+ * whose store discards all nodes, so that neither the parser nor a
+ * database is measured.
+ *
+ * Besides the throughput of whole corpora the throughput per event type
+ * is reported as secondary result, e.g. {@code emit:scalar}.
+ *
+ * The bytes allocated per corpus are reported by the profiler of the
+ * garbage collector, {@code -prof gc}, as {@code gc.alloc.rate.norm}, with
+ * and without ({@code stringCacheSize=0}) the cache of names and values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmitterBenchmark {
+
+    @Param({ "WIDE", "DEEP", "LONG_SEQUENCE", "MULTI_DOCUMENT", "PROBES" })
+    private Corpus corpus;
+
+    @Param({ "0", "8192" })
+    private int stringCacheSize;
+
+    private Scanner scanner;
+    private StringCache strings;
+    private YAMLFileDescriptor fileDescriptor;
+    private List<Event[]> files;
+    private long[] eventsPerType;
+
+    @Setup
+    public void setUp() throws IOException {
+        scanner = Stubs.scanner();
+        fileDescriptor = Stubs.fileDescriptor();
+        strings = new StringCache(stringCacheSize);
+        files = new ArrayList<>();
+        eventsPerType = new long[Event.ID.values().length];
+
+        for (byte[] content : corpus.files()) {
+            Event[] events = parse(content);
+
+            // Leave out the probes not supported by the emitter
+            if (emit(events)) {
+                files.add(events);
+
+                for (Event event : events) {
+                    eventsPerType[id(event).ordinal()]++;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void emit(Events events) throws IOException {
+        for (Event[] file : files) {
+            YAMLEmitter emitter = emitter();
+
+            for (Event event : file) {
+                emitter.emit(event);
+            }
+            emitter.commit();
+        }
+
+        events.scalar += eventsPerType[Event.ID.Scalar.ordinal()];
+        events.alias += eventsPerType[Event.ID.Alias.ordinal()];
+        events.mappingStart += eventsPerType[Event.ID.MappingStart.ordinal()];
+        events.mappingEnd += eventsPerType[Event.ID.MappingEnd.ordinal()];
+        events.sequenceStart += eventsPerType[Event.ID.SequenceStart.ordinal()];
+        events.sequenceEnd += eventsPerType[Event.ID.SequenceEnd.ordinal()];
+        events.documentStart += eventsPerType[Event.ID.DocumentStart.ordinal()];
+        events.documentEnd += eventsPerType[Event.ID.DocumentEnd.ordinal()];
+    }
+
+    private boolean emit(Event[] events) {
+        try {
+            YAMLEmitter emitter = emitter();
+
+            for (Event event : events) {
+                emitter.emit(event);
+            }
+            emitter.commit();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private YAMLEmitter emitter() {
+        return new YAMLEmitter(fileDescriptor, scanner, YAMLFileScannerPlugin.DEFAULT_BATCH_SIZE,
+                               YAMLFileScannerPlugin.DEFAULT_STAGING_LIMIT, false, false, new ScanBudget(0, 0, 0, 0, 0),
+                               new ScanStatistics(), ScanEvents.of("/benchmark.yaml"), strings,
+                               FQNFilter.ALL, 0, null, null);
+    }
+
+    private static Event[] parse(byte[] content) {
+        List<Event> events = new ArrayList<>();
+        ParserImpl parser = new ParserImpl(new StreamReader(new UnicodeReader(new ByteArrayInputStream(content))));
+
+        try {
+            while (parser.peekEvent() != null) {
+                events.add(parser.getEvent());
+            }
+        } catch (RuntimeException e) {
+            // Keep the events up to the syntax error, as the scanner does
+        }
+        return events.toArray(new Event[0]);
+    }
+
+    private static Event.ID id(Event event) {
+        for (Event.ID id : Event.ID.values()) {
+            if (event.is(id)) {
+                return id;
+            }
+        }
+        throw new IllegalArgumentException("Unknown event " + event);
+    }
+
+    /**
+     * The number of emitted events per event type.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Events {
+        public long scalar;
+        public long alias;
+        public long mappingStart;
+        public long mappingEnd;
+        public long sequenceStart;
+        public long sequenceEnd;
+        public long documentStart;
+        public long documentEnd;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            scalar = 0;
+            alias = 0;
+            mappingStart = 0;
+            mappingEnd = 0;
+            sequenceStart = 0;
+            sequenceEnd = 0;
+            documentStart = 0;
+            documentEnd = 0;
+        }
+    }
+}
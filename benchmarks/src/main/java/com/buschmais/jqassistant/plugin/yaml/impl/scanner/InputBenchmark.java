@@ -0,0 +1,120 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+/**
+ * Reads the files of a corpus from the file system, either as a stream
+ * through {@link UnicodeReader} or through the file channel of
+ * {@link FileChannelReader}. Both inputs update the MD5 hash and the
+ * statistics of the file, like a scan does.
+ *
+ * <p>{@code read} measures reading and decoding the characters only,
+ * {@code parse} additionally pulls the events from the parser.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputBenchmark {
+
+    @Param({ "WIDE", "MULTI_DOCUMENT", "LARGE" })
+    private Corpus corpus;
+
+    @Param({ "stream", "channel" })
+    private String input;
+
+    private List<Path> files;
+    private char[] buffer = new char[1025];
+
+    @Setup
+    public void setUp() throws IOException {
+        files = new ArrayList<>();
+
+        for (byte[] content : corpus.files()) {
+            Path file = Files.createTempFile("input-benchmark", ".yaml");
+
+            files.add(Files.write(file, content));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        for (Path file : files) {
+            try (Reader reader = open(file)) {
+                int read;
+
+                while ((read = reader.read(buffer)) != -1) {
+                    blackhole.consume(read);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        for (Path file : files) {
+            try (Reader reader = open(file)) {
+                Parser parser = new ParserImpl(new StreamReader(reader));
+
+                while (parser.peekEvent() != null) {
+                    blackhole.consume(parser.getEvent());
+                }
+            }
+        }
+    }
+
+    private Reader open(Path file) throws IOException {
+        MessageDigest md5 = md5();
+        ScanStatistics statistics = new ScanStatistics();
+
+        if ("channel".equals(input)) {
+            return FileChannelReader.open(file.toFile(), 1, md5, statistics);
+        }
+
+        return new UnicodeReader(new DigestInputStream(statistics.count(Files.newInputStream(file)), md5));
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
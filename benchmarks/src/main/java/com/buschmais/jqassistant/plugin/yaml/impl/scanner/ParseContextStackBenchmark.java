@@ -0,0 +1,135 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.buschmais.jqassistant.plugin.yaml.impl.scanner.YAMLEmitter.ParseContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.YAMLEmitter.ParseContext.DOCUMENT_CTX;
+import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.YAMLEmitter.ParseContext.MAPPING_CXT;
+import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.YAMLEmitter.ParseContext.MAPPING_KEY_CXT;
+import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.YAMLEmitter.ParseContext.MAPPING_VALUE_CXT;
+
+/**
+ * Compares the stack of parse contexts in {@link ProcessingContext} with
+ * the former implementation based on a {@link LinkedList}.
+ *
+ * Each invocation pushes a key and its value, checks the context chains
+ * tested by the emitter for a mapping end and pops both contexts again.
+ * Run with {@code -prof gc} to see the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseContextStackBenchmark {
+
+    private static final ParseContext[] MAPPING = { MAPPING_CXT };
+    private static final ParseContext[] VALUE_OF_KEY = { MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT };
+    private static final ParseContext[] MAPPING_AS_VALUE_OF_KEY = { MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_CXT };
+    private static final ParseContext[] VALUE_OF_KEY_IN_NESTED_MAPPING =
+         { MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT };
+
+    /**
+     * Number of nested mappings below the document.
+     */
+    @Param({ "1", "4", "16" })
+    private int depth;
+
+    private ProcessingContext context;
+    private LinkedList<ParseContext> linkedContext;
+
+    @Setup
+    public void setUp() {
+        context = new ProcessingContext();
+        linkedContext = new LinkedList<>();
+
+        context.pushContextEvent(DOCUMENT_CTX);
+        linkedContext.push(DOCUMENT_CTX);
+
+        for (int i = 0; i < depth; i++) {
+            context.pushContextEvent(MAPPING_CXT);
+            context.pushContextEvent(MAPPING_KEY_CXT);
+            linkedContext.push(MAPPING_CXT);
+            linkedContext.push(MAPPING_KEY_CXT);
+        }
+
+        context.pushContextEvent(MAPPING_CXT);
+        linkedContext.push(MAPPING_CXT);
+    }
+
+    @Benchmark
+    public int array() {
+        context.pushContextEvent(MAPPING_KEY_CXT);
+        context.pushContextEvent(MAPPING_VALUE_CXT);
+
+        int matches = 0;
+
+        matches += context.isContext(MAPPING_AS_VALUE_OF_KEY) ? 1 : 0;
+        matches += context.isContext(MAPPING) ? 1 : 0;
+        matches += context.isContext(VALUE_OF_KEY_IN_NESTED_MAPPING) ? 1 : 0;
+        matches += context.isContext(VALUE_OF_KEY) ? 1 : 0;
+
+        context.popContextEvent(2);
+
+        return matches;
+    }
+
+    @Benchmark
+    public int linkedList() {
+        linkedContext.push(MAPPING_KEY_CXT);
+        linkedContext.push(MAPPING_VALUE_CXT);
+
+        int matches = 0;
+
+        matches += isLinkedContext(MAPPING_AS_VALUE_OF_KEY) ? 1 : 0;
+        matches += isLinkedContext(MAPPING) ? 1 : 0;
+        matches += isLinkedContext(VALUE_OF_KEY_IN_NESTED_MAPPING) ? 1 : 0;
+        matches += isLinkedContext(VALUE_OF_KEY) ? 1 : 0;
+
+        linkedContext.pop();
+        linkedContext.pop();
+
+        return matches;
+    }
+
+    /**
+     * The former implementation of {@link ProcessingContext#isContext(ParseContext...)}.
+     */
+    private boolean isLinkedContext(ParseContext... eventChain) {
+        int pathLength = eventChain.length;
+        int currentContextDepth = linkedContext.size();
+
+        boolean result = true;
+
+        if (pathLength <= currentContextDepth) {
+            List<ParseContext> tail = linkedContext.subList(0, pathLength);
+
+            for (int i = pathLength - 1; i >= 0; i--) {
+                if (eventChain[i] != tail.get(pathLength - 1 - i)) {
+                    result = false;
+                    break;
+                }
+            }
+        } else {
+            result = false;
+        }
+
+        return result;
+    }
+}
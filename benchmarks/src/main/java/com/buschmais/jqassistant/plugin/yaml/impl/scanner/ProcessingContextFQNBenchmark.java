@@ -0,0 +1,111 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import com.buschmais.jqassistant.plugin.yaml.impl.scanner.DescriptorBatch.Node;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the incremental construction of full qualified names in
+ * {@link ProcessingContext} with walking the whole stack of keys for
+ * every single key.
+ *
+ * The stack of keys has the given depth and below the innermost key
+ * the given number of sibling keys is pushed and popped again, as done
+ * by the emitter for a mapping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingContextFQNBenchmark {
+
+    @Param({ "1", "8", "32" })
+    private int depth;
+
+    @Param({ "10", "1000" })
+    private int width;
+
+    private ProcessingContext context;
+    private ArrayDeque<Node> stack;
+    private String[] names;
+    private Node[] siblings;
+
+    @Setup
+    public void setUp() {
+        context = new ProcessingContext();
+        stack = new ArrayDeque<>();
+
+        for (int i = 0; i < depth; i++) {
+            Node key = key("level" + i);
+
+            context.push(key);
+            stack.push(key);
+        }
+
+        names = new String[width];
+        siblings = new Node[width];
+
+        for (int i = 0; i < width; i++) {
+            names[i] = "key" + i;
+            siblings[i] = key(names[i]);
+        }
+    }
+
+    @Benchmark
+    public void incremental(Blackhole blackhole) {
+        for (int i = 0; i < width; i++) {
+            blackhole.consume(context.buildNextFQN(names[i]));
+            context.push(siblings[i]);
+            context.pop();
+        }
+    }
+
+    @Benchmark
+    public void stackWalk(Blackhole blackhole) {
+        for (int i = 0; i < width; i++) {
+            blackhole.consume(buildNextFQNByStackWalk(names[i]));
+            stack.push(siblings[i]);
+            stack.pop();
+        }
+    }
+
+    /**
+     * The former implementation of {@link ProcessingContext#buildNextFQN(String)}.
+     */
+    private String buildNextFQNByStackWalk(String lastElement) {
+        StringBuilder builder = new StringBuilder();
+
+        Iterator<Node> descItr = stack.descendingIterator();
+
+        while (descItr.hasNext()) {
+            Node node = descItr.next();
+
+            if (node.isKey()) {
+                builder.append(node.getName()).append('.');
+            }
+        }
+
+        return builder.append(lastElement).toString();
+    }
+
+    private static Node key(String name) {
+        return new Node(name, name, null, name, 0);
+    }
+}
@@ -0,0 +1,217 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Runs typical queries of rules over YAML keys and values against an
+ * embedded Neo4j database, with and without the indexes of keys declared
+ * by the model of the plugin.
+ *
+ * <p>The database holds a graph like the one written by a scan of many
+ * Kubernetes manifests, including config maps with many different keys.
+ * Each query looks up keys by their full qualified name, by their name or
+ * by their path, as rules usually do.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final Label YAML = Label.label("YAML");
+    private static final Label DOCUMENT = Label.label("Document");
+    private static final Label KEY = Label.label("Key");
+    private static final Label VALUE = Label.label("Value");
+    private static final Label PATH = Label.label("Path");
+    private static final RelationshipType CONTAINS_KEY = RelationshipType.withName("CONTAINS_KEY");
+    private static final RelationshipType CONTAINS_VALUE = RelationshipType.withName("CONTAINS_VALUE");
+
+    private static final String[] KINDS = { "Deployment", "Service", "ConfigMap" };
+
+    @Param({ "5000" })
+    private int documents;
+
+    @Param({ "true", "false" })
+    private boolean indexed;
+
+    private Path directory;
+    private GraphDatabaseService database;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("query-benchmark");
+        database = new GraphDatabaseFactory().newEmbeddedDatabase(directory.toFile());
+
+        for (int from = 0; from < documents; from += 500) {
+            try (Transaction transaction = database.beginTx()) {
+                for (int i = from; i < Math.min(from + 500, documents); i++) {
+                    createDocument(i);
+                }
+
+                transaction.success();
+            }
+        }
+
+        if (indexed) {
+            // The indexes created by XO for the model of the plugin
+            try (Transaction transaction = database.beginTx()) {
+                database.execute("CREATE INDEX ON :Key(fqn)").close();
+                database.execute("CREATE INDEX ON :Key(name)").close();
+                database.execute("CREATE INDEX ON :Path(path)").close();
+                transaction.success();
+            }
+
+            try (Transaction transaction = database.beginTx()) {
+                database.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+                transaction.success();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.shutdown();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Finds the manifest of a single application by its name.
+     */
+    @Benchmark
+    public void keyByFullQualifiedName(Blackhole blackhole) {
+        query(blackhole, "MATCH (k:YAML:Key {fqn: 'metadata.name'})-[:CONTAINS_VALUE]->(:YAML:Value {value: 'app-42'}) " +
+                         "RETURN k");
+    }
+
+    /**
+     * Lists the images of all containers.
+     */
+    @Benchmark
+    public void keyByName(Blackhole blackhole) {
+        query(blackhole, "MATCH (k:YAML:Key {name: 'image'})-[:CONTAINS_VALUE]->(v:YAML:Value) " +
+                         "RETURN v.value");
+    }
+
+    /**
+     * Lists the images of the first container of each pod.
+     */
+    @Benchmark
+    public void keyByPath(Blackhole blackhole) {
+        query(blackhole, "MATCH (k:YAML:Key:Path {path: 'spec.template.spec.containers[0].image'})" +
+                         "-[:CONTAINS_VALUE]->(v:YAML:Value) " +
+                         "RETURN v.value");
+    }
+
+    /**
+     * Counts the documents of each kind, like a concept adding labels to
+     * the documents.
+     */
+    @Benchmark
+    public void documentsByKind(Blackhole blackhole) {
+        query(blackhole, "MATCH (d:YAML:Document)-[:CONTAINS_KEY]->(:YAML:Key {fqn: 'kind'})" +
+                         "-[:CONTAINS_VALUE]->(v:YAML:Value) " +
+                         "RETURN v.value, count(d)");
+    }
+
+    private void query(Blackhole blackhole, String query) {
+        try (Transaction transaction = database.beginTx(); Result result = database.execute(query)) {
+            while (result.hasNext()) {
+                blackhole.consume(result.next());
+            }
+
+            transaction.success();
+        }
+    }
+
+    /**
+     * Creates a document like a small Kubernetes manifest.
+     */
+    private void createDocument(int i) {
+        Node document = database.createNode(YAML, DOCUMENT);
+        String app = "app-" + i;
+
+        key(document, "apiVersion", "apiVersion", "apps/v1");
+        key(document, "kind", "kind", KINDS[i % KINDS.length]);
+
+        Node metadata = key(document, "metadata", "metadata", null);
+
+        key(metadata, "name", "metadata.name", app);
+        key(metadata, "namespace", "metadata.namespace", "namespace-" + i % 20);
+
+        Node labels = key(metadata, "labels", "metadata.labels", null);
+
+        key(labels, "app", "metadata.labels.app", app);
+
+        Node spec = key(document, "spec", "spec", null);
+
+        key(spec, "replicas", "spec.replicas", Integer.toString(i % 5 + 1));
+
+        Node template = key(spec, "template", "spec.template", null);
+        Node podSpec = key(template, "spec", "spec.template.spec", null);
+        Node containers = key(podSpec, "containers", "spec.template.spec.containers", null);
+
+        key(containers, "name", "spec.template.spec.containers.name", app);
+        key(containers, "image", "spec.template.spec.containers.image", "registry/" + app + ":1.0");
+
+        if (i % KINDS.length == 2) {
+            // The entries of a config map, whose names vary from file to file
+            Node data = key(document, "data", "data", null);
+
+            for (int j = 0; j < 20; j++) {
+                String name = "property-" + (i * 20 + j) % 2000;
+
+                key(data, name, "data." + name, Integer.toString(j));
+            }
+        }
+    }
+
+    private Node key(Node parent, String name, String fqn, String value) {
+        Node key = database.createNode(YAML, KEY, PATH);
+
+        key.setProperty("name", name);
+        key.setProperty("fqn", fqn);
+        key.setProperty("path", fqn.replace(".containers.", ".containers[0]."));
+        parent.createRelationshipTo(key, CONTAINS_KEY);
+
+        if (value != null) {
+            Node valueNode = database.createNode(YAML, VALUE, PATH);
+
+            valueNode.setProperty("value", value);
+            key.createRelationshipTo(valueNode, CONTAINS_VALUE);
+        }
+
+        return key;
+    }
+}
@@ -0,0 +1,98 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.buschmais.jqassistant.core.scanner.api.Scanner;
+import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scans all files of a corpus with {@link YAMLFileScannerPlugin} from the
+ * bytes of the file to the queries sent to a store discarding all nodes.
+ * Parser, emitter and the bulk writes are measured together.
+ *
+ * <p>The overhead of storing the statistics of each file and of collecting
+ * the summary of the scan is the difference between the results with
+ * {@code statistics=true} and {@code statistics=false}.</p>
+ *
+ * <p>The keys written can be filtered by passing include patterns, e.g.
+ * {@code -p include=**.name}. By default all keys are written. Sequences
+ * of scalars are written as items of their keys with
+ * {@code -p compactSequences=true}. The mappings and sequences of deep
+ * keys are folded into JSON with e.g. {@code -p foldDepth=2}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({ "WIDE", "DEEP", "LONG_SEQUENCE", "MULTI_DOCUMENT", "PROBES" })
+    private Corpus corpus;
+
+    @Param({ "true", "false" })
+    private String streaming;
+
+    @Param({ "false", "true" })
+    private String statistics;
+
+    @Param({ "" })
+    private String include;
+
+    @Param({ "false" })
+    private String compactSequences;
+
+    @Param({ "0" })
+    private String foldDepth;
+
+    private YAMLFileScannerPlugin plugin;
+    private Scanner scanner;
+    private FileResource[] files;
+
+    @Setup
+    public void setUp() {
+        scanner = Stubs.scanner();
+        plugin = new YAMLFileScannerPlugin();
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(YAMLFileScannerPlugin.PROPERTY_STREAMING, streaming);
+        properties.put(YAMLFileScannerPlugin.PROPERTY_STATISTICS, statistics);
+        properties.put(YAMLFileScannerPlugin.PROPERTY_INCLUDE, include);
+        properties.put(YAMLFileScannerPlugin.PROPERTY_COMPACT_SEQUENCES, compactSequences);
+        properties.put(YAMLFileScannerPlugin.PROPERTY_FOLD_DEPTH, foldDepth);
+        plugin.configure(scanner.getContext(), properties);
+
+        List<byte[]> contents = corpus.files();
+
+        files = new FileResource[contents.size()];
+
+        for (int i = 0; i < files.length; i++) {
+            files[i] = Stubs.file(contents.get(i));
+        }
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws IOException {
+        for (FileResource file : files) {
+            blackhole.consume(plugin.scan(file, "/corpus.yaml", null, scanner));
+        }
+    }
+}
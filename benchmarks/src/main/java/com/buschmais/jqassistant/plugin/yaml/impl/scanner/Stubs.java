@@ -0,0 +1,140 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+import com.buschmais.jqassistant.core.scanner.api.Scanner;
+import com.buschmais.jqassistant.core.scanner.api.ScannerContext;
+import com.buschmais.jqassistant.core.store.api.Store;
+import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
+import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
+import com.buschmais.xo.api.Query;
+import com.buschmais.xo.api.Query.Result.CompositeRowObject;
+import com.buschmais.xo.api.ResultIterator;
+
+/**
+ * Creates lightweight stubs for the interfaces used by the scanner, so
+ * that the benchmarks measure the scanner and not a mocking framework or
+ * a database.
+ */
+final class Stubs {
+
+    /**
+     * Handler for descriptor stubs, which discard all added relations.
+     */
+    private static final InvocationHandler DESCRIPTOR = (proxy, method, args) -> {
+        if (List.class.equals(method.getReturnType())) {
+            return new DiscardingList<>();
+        }
+        if ("getId".equals(method.getName())) {
+            return 0L;
+        }
+        if (boolean.class.equals(method.getReturnType())) {
+            return false;
+        }
+        return int.class.equals(method.getReturnType()) ? 0 : null;
+    };
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates a scanner whose store discards all written nodes and relations.
+     */
+    static Scanner scanner() {
+        YAMLFileDescriptor fileDescriptor = fileDescriptor();
+        Store store = stub(Store.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "executeQuery":
+                    Map<?, ?> parameters = (Map<?, ?>) args[1];
+
+                    if (parameters.containsKey("relations")) {
+                        return result(1, ((List<?>) parameters.get("relations")).size());
+                    }
+
+                    List<?> rows = (List<?>) parameters.values().iterator().next();
+                    return result(rows.size(), 0);
+                case "create":
+                    return stub((Class<?>) args[0], DESCRIPTOR);
+                case "addDescriptorType":
+                    return fileDescriptor;
+                default:
+                    return null;
+            }
+        });
+        FileDescriptor currentDescriptor = stub(FileDescriptor.class, DESCRIPTOR);
+        ScannerContext context = stub(ScannerContext.class, (proxy, method, args) ->
+             "getStore".equals(method.getName()) ? store : currentDescriptor);
+
+        return stub(Scanner.class, (proxy, method, args) -> context);
+    }
+
+    /**
+     * Creates a YAML file descriptor, which discards all added documents.
+     */
+    static YAMLFileDescriptor fileDescriptor() {
+        return stub(YAMLFileDescriptor.class, DESCRIPTOR);
+    }
+
+    /**
+     * Creates a file resource providing the given content.
+     */
+    static FileResource file(byte[] content) {
+        return stub(FileResource.class, (proxy, method, args) ->
+             "createStream".equals(method.getName()) ? new ByteArrayInputStream(content) : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Creates the result of a query creating the given number of nodes, or
+     * of relations if there is a single row.
+     */
+    private static Query.Result<?> result(int rows, long created) {
+        int[] next = { 0 };
+        InvocationHandler iterator = (proxy, method, args) -> {
+            if ("hasNext".equals(method.getName())) {
+                return next[0] < rows;
+            }
+            if ("next".equals(method.getName())) {
+                int index = next[0]++;
+
+                return stub(CompositeRowObject.class, (row, get, column) -> {
+                    if ("index".equals(column[0])) {
+                        return index;
+                    }
+                    return "created".equals(column[0]) ? created : 0L;
+                });
+            }
+            return null;
+        };
+
+        return stub(Query.Result.class, (proxy, method, args) ->
+             "iterator".equals(method.getName()) ? stub(ResultIterator.class, iterator) : null);
+    }
+
+    private static class DiscardingList<T> extends AbstractList<T> {
+        @Override
+        public boolean add(T element) {
+            return true;
+        }
+
+        @Override
+        public T get(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.buschmais.jqassistant.core.scanner.api.Scanner;
+import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Scans thousands of tiny YAML files with a store discarding all nodes,
+ * so that the time per file is dominated by the setup of the parser and
+ * the scanner for each file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TinyFilesBenchmark {
+
+    private static final int FILES = 2000;
+
+    @Param({ "true", "false" })
+    private String streaming;
+
+    private YAMLFileScannerPlugin plugin;
+    private Scanner scanner;
+    private FileResource[] files;
+
+    @Setup
+    public void setUp() {
+        scanner = Stubs.scanner();
+        plugin = new YAMLFileScannerPlugin();
+        plugin.configure(scanner.getContext(), singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, streaming));
+        files = new FileResource[FILES];
+
+        for (int i = 0; i < FILES; i++) {
+            String content = "name: service-" + i + "\nversion: 1." + i + "\ntags:\n  - a\n  - b\n";
+
+            files[i] = Stubs.file(content.getBytes(UTF_8));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public void scan(Blackhole blackhole) throws IOException {
+        for (FileResource file : files) {
+            blackhole.consume(plugin.scan(file, "/tiny.yaml", null, scanner));
+        }
+    }
+}
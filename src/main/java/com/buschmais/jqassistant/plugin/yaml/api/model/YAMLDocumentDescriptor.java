@@ -2,12 +2,18 @@ package com.buschmais.jqassistant.plugin.yaml.api.model;
 
 import java.util.List;
 
+import com.buschmais.jqassistant.plugin.common.api.model.ValidDescriptor;
 import com.buschmais.xo.neo4j.api.annotation.Label;
+import com.buschmais.xo.neo4j.api.annotation.Property;
 import com.buschmais.xo.neo4j.api.annotation.Relation;
 
-@Label("Document")
+/**
+ * A document of a YAML file. If documents are deduplicated, a document
+ * may be contained in several files.
+ */
+@Label(value = "Document", usingIndexedPropertyOf = YAMLHashDescriptor.class)
 public interface YAMLDocumentDescriptor extends YAMLDescriptor, YAMLKeyBucket,
-                                                YAMLValueBucket {
+                                                YAMLValueBucket, YAMLHashDescriptor, ValidDescriptor {
 
     @Override
     @Relation("CONTAINS_KEY")
@@ -16,4 +22,15 @@ public interface YAMLDocumentDescriptor extends YAMLDescriptor, YAMLKeyBucket,
     @Override
     @Relation("CONTAINS_VALUE")
     List<YAMLValueDescriptor> getValues();
+
+    /**
+     * Returns the reason why the document could not be scanned, e.g. a
+     * parse error. An invalid document contains no keys and values.
+     *
+     * @return the reason or {@code null} if the document is valid.
+     */
+    @Property("reason")
+    String getReason();
+
+    void setReason(String reason);
 }
@@ -3,13 +3,101 @@ package com.buschmais.jqassistant.plugin.yaml.api.model;
 import java.util.List;
 
 import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
+import com.buschmais.jqassistant.plugin.common.api.model.MD5Descriptor;
 import com.buschmais.jqassistant.plugin.common.api.model.ValidDescriptor;
+import com.buschmais.xo.neo4j.api.annotation.Property;
 import com.buschmais.xo.neo4j.api.annotation.Relation;
 
 public interface YAMLFileDescriptor
- extends YAMLDescriptor, FileDescriptor, ValidDescriptor
+ extends YAMLDescriptor, FileDescriptor, ValidDescriptor, MD5Descriptor
 {
 
     @Relation("CONTAINS_DOCUMENT")
     List<YAMLDocumentDescriptor> getDocuments();
+
+    /**
+     * Returns the reason why the file could not be scanned, e.g. a parse
+     * error or an exceeded limit of the scanner.
+     *
+     * @return the reason or {@code null} if the file is valid.
+     */
+    @Property("reason")
+    String getReason();
+
+    void setReason(String reason);
+
+    /**
+     * Returns the MD5 hash of the settings of the scanner which affect the
+     * keys and values written for the file. Together with the MD5 hash of
+     * its content it tells whether the file must be scanned again.
+     *
+     * @return the hash or {@code null} if the file could not be scanned.
+     */
+    @Property("settings")
+    String getSettings();
+
+    void setSettings(String settings);
+
+    /*
+     * Statistics of the last scan of the file, which are only set if the
+     * statistics are enabled by the property yaml.file.statistics.
+     */
+
+    /**
+     * Returns the number of bytes read from the file.
+     */
+    @Property("bytes")
+    Long getBytes();
+
+    void setBytes(Long bytes);
+
+    /**
+     * Returns the number of documents read from the file.
+     */
+    @Property("documentCount")
+    Long getDocumentCount();
+
+    void setDocumentCount(Long documentCount);
+
+    /**
+     * Returns the number of keys read from the file.
+     */
+    @Property("keyCount")
+    Long getKeyCount();
+
+    void setKeyCount(Long keyCount);
+
+    /**
+     * Returns the number of values read from the file.
+     */
+    @Property("valueCount")
+    Long getValueCount();
+
+    void setValueCount(Long valueCount);
+
+    /**
+     * Returns the maximum nesting depth of the mappings and sequences of
+     * the file.
+     */
+    @Property("maxDepth")
+    Long getMaxDepth();
+
+    void setMaxDepth(Long maxDepth);
+
+    /**
+     * Returns the time in milliseconds spent reading and parsing the file.
+     */
+    @Property("parseTime")
+    Long getParseTime();
+
+    void setParseTime(Long parseTime);
+
+    /**
+     * Returns the time in milliseconds spent writing the documents of the
+     * file to the store.
+     */
+    @Property("writeTime")
+    Long getWriteTime();
+
+    void setWriteTime(Long writeTime);
 }
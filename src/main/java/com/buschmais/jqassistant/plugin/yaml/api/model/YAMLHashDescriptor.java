@@ -0,0 +1,42 @@
+package com.buschmais.jqassistant.plugin.yaml.api.model;
+
+import com.buschmais.jqassistant.core.store.api.model.Descriptor;
+import com.buschmais.xo.neo4j.api.annotation.Indexed;
+import com.buschmais.xo.neo4j.api.annotation.Property;
+
+/**
+ * A document identified by the hash of its structure and its scalars,
+ * which is used to look up an identical document already written for
+ * another file.
+ */
+public interface YAMLHashDescriptor extends Descriptor {
+
+    /**
+     * Returns the hash of the document.
+     *
+     * The hash is only set if documents are deduplicated. It does not
+     * depend on the formatting, the comments or the quoting of the
+     * document, but on the settings of the scanner which affect the keys
+     * and values written for it.
+     *
+     * @return the hash of the document or {@code null}.
+     */
+    @Indexed
+    @Property("hash")
+    String getHash();
+
+    void setHash(String hash);
+
+    /**
+     * Returns the number of keys and values of the document, which must
+     * be equal as well for a document to be shared.
+     *
+     * The size is only set if the hash is set.
+     *
+     * @return the number of keys and values or {@code null}.
+     */
+    @Property("size")
+    Long getSize();
+
+    void setSize(Long size);
+}
@@ -4,15 +4,25 @@ import java.util.List;
 
 import com.buschmais.jqassistant.core.store.api.model.FullQualifiedNameDescriptor;
 import com.buschmais.jqassistant.plugin.common.api.model.NamedDescriptor;
+import com.buschmais.xo.neo4j.api.annotation.Indexed;
 import com.buschmais.xo.neo4j.api.annotation.Label;
 import com.buschmais.xo.neo4j.api.annotation.Property;
 import com.buschmais.xo.neo4j.api.annotation.Relation;
 
-@Label("Key")
-public interface YAMLKeyDescriptor extends YAMLDescriptor, NamedDescriptor,
+/**
+ * A key of a YAML mapping. Keys are indexed by their full qualified name,
+ * by their name and by their path, as rules usually look them up by one of
+ * these properties.
+ */
+@Label(value = "Key", usingIndexedPropertyOf = FullQualifiedNameDescriptor.class)
+public interface YAMLKeyDescriptor extends YAMLDescriptor, YAMLPathDescriptor, NamedDescriptor,
                                            YAMLKeyBucket, YAMLValueBucket,
                                            FullQualifiedNameDescriptor {
 
+    @Indexed
+    @Override
+    String getName();
+
     @Relation("CONTAINS_KEY")
     List<YAMLKeyDescriptor> getKeys();
 
@@ -25,10 +35,45 @@ public interface YAMLKeyDescriptor extends YAMLDescriptor, NamedDescriptor,
      *
      * The position starts with zero and is relative to
      * it's parent. The parent could either be the containing
-     * document or an other key.
+     * document or an other key. The keys of a mapping in a
+     * sequence are numbered within this mapping, the position
+     * of the mapping in the sequence is part of the path.
      *
      * @return the position of the key relative to it's parent.
      */
     @Property("position")
     int getPosition();
+
+    /**
+     * Returns the items of a sequence of scalars assigned to the key, if
+     * sequences are stored compactly.
+     *
+     * A sequence containing mappings or other sequences is stored as
+     * values of the key instead.
+     *
+     * @return the items of the sequence or {@code null}.
+     */
+    @Property("items")
+    String[] getItems();
+
+    /**
+     * Returns the number of items of a sequence of scalars assigned to
+     * the key, if sequences are stored compactly.
+     *
+     * @return the number of items of the sequence or {@code null}.
+     */
+    @Property("itemCount")
+    Integer getItemCount();
+
+    /**
+     * Returns the mapping or sequence assigned to the key as JSON, if the
+     * key is folded by its depth or by its full qualified name.
+     *
+     * Scalars are written as JSON strings. No keys or values are
+     * written for a folded mapping or sequence.
+     *
+     * @return the folded mapping or sequence or {@code null}.
+     */
+    @Property("json")
+    String getJson();
 }
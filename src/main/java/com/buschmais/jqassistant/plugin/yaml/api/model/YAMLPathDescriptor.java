@@ -0,0 +1,42 @@
+package com.buschmais.jqassistant.plugin.yaml.api.model;
+
+import com.buschmais.jqassistant.core.store.api.model.Descriptor;
+import com.buschmais.xo.api.annotation.Abstract;
+import com.buschmais.xo.neo4j.api.annotation.Indexed;
+import com.buschmais.xo.neo4j.api.annotation.Label;
+import com.buschmais.xo.neo4j.api.annotation.Property;
+
+/**
+ * A key or a value identified by its path within the document, which
+ * extends the full qualified name of a key by the position of each item of
+ * a sequence, e.g. {@code spec.containers[0].image}.
+ *
+ * The property {@code path} is indexed for all nodes labeled with
+ * {@code :Path}, as the indexes of {@code :Key} are already used by the
+ * full qualified name and the name.
+ */
+@Abstract
+@Label("Path")
+public interface YAMLPathDescriptor extends Descriptor {
+
+    /**
+     * The maximum number of characters of a path which is set.
+     */
+    int MAX_PATH_LENGTH = 1000;
+
+    /**
+     * Returns the path of the key or value.
+     *
+     * The path of a value is only set for an item of a sequence, e.g.
+     * {@code spec.containers[0].args[1]}. A path longer than
+     * {@link #MAX_PATH_LENGTH} characters is not set, as it would exceed
+     * the maximum size of a key of an index of Neo4j.
+     *
+     * @return the path of the key or value.
+     */
+    @Indexed
+    @Property("path")
+    String getPath();
+
+    void setPath(String path);
+}
@@ -7,7 +7,7 @@ import com.buschmais.xo.neo4j.api.annotation.Property;
 import com.buschmais.xo.neo4j.api.annotation.Relation;
 
 @Label("Value")
-public interface YAMLValueDescriptor extends YAMLDescriptor, YAMLValueBucket {
+public interface YAMLValueDescriptor extends YAMLDescriptor, YAMLPathDescriptor, YAMLValueBucket {
 
     @Property("value")
     String getValue();
@@ -26,7 +26,8 @@ public interface YAMLValueDescriptor extends YAMLDescriptor, YAMLValueBucket {
      *
      * The position starts with zero and is relative to
      * it's parent. The parent could either be the containing
-     * document or a key.
+     * document or a key. An item of a sequence has the
+     * position of the item within the sequence.
      *
      * @return the position of the key relative to it's parent.
      */
@@ -0,0 +1,619 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import com.buschmais.jqassistant.core.store.api.Store;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLPathDescriptor;
+import com.buschmais.xo.api.Query;
+import com.buschmais.xo.api.Query.Result.CompositeRowObject;
+
+import static java.lang.String.format;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Stages the documents, keys and values of a YAML file and the relations
+ * between them and writes them to the store in bulk. Each write uses one
+ * parameterized query per node type and per relation type and per batch
+ * of nodes, instead of one store operation per node and per relation.
+ *
+ * <p>Nothing is written before {@link #commit()} is called after the whole
+ * file has been read, so that a file which cannot be scanned costs only
+ * the time to parse it and leaves no nodes in the store. The staged
+ * relations are held as parallel arrays of their parent and child nodes.
+ * If the number of staged keys and values reaches the staging limit, the
+ * staged nodes are written before the file has been read completely.
+ * These nodes are removed again by {@link #discard()}.</p>
+ *
+ * <p>Keys and values are only staged by {@link #stage(Node)}, so that the
+ * keys of a filtered file are not written unless they or any key or value
+ * below them is included. Documents are staged as soon as they are
+ * created.</p>
+ *
+ * <p>If documents are deduplicated, a document is replaced by an identical
+ * document already written for another file at its end, i.e. a document
+ * with the same hash and the same number of keys and values, and its
+ * staged keys, values and relations are dropped. The documents of the file
+ * from its last scan are no candidates, as they are removed if the file has
+ * changed. A document which has been written in parts because of the
+ * staging limit is kept.</p>
+ *
+ * <p>If a document cannot be scanned, {@link #fail(Node, String)} drops
+ * its staged keys, values and relations and removes the ones already
+ * written for it from the store. The document itself is kept and marked
+ * invalid, while the other documents of the file are not affected.</p>
+ *
+ * <p>Nodes already written keep the id assigned by the store, so that
+ * relations to them can be created by later writes. The nodes of the
+ * relations are looked up once per write by their ids, and each relation
+ * refers to its nodes by their index in the sorted list of these nodes. A
+ * lookup by id for each single relation would be planned as a scan of all
+ * nodes while the statistics of the store are still empty, e.g. during the
+ * first scan into a new store.</p>
+ */
+class DescriptorBatch {
+    private static final String CREATE_KEYS =
+         "UNWIND $nodes AS node " +
+         "CREATE (key:YAML:Key:Path) " +
+         "SET key.name = node.name, key.fqn = node.fullQualifiedName, key.path = node.path, " +
+         "key.position = node.position, key.items = node.items, key.itemCount = size(node.items), " +
+         "key.json = node.json " +
+         "RETURN node.index AS index, id(key) AS id";
+
+    private static final String CREATE_VALUES =
+         "UNWIND $nodes AS node " +
+         "CREATE (value:YAML:Value:Path) " +
+         "SET value.value = node.value, value.path = node.path, value.position = node.position " +
+         "RETURN node.index AS index, id(value) AS id";
+
+    private static final String CREATE_KEY_RELATIONS =
+         "MATCH (node) WHERE id(node) IN $ids " +
+         "WITH node ORDER BY id(node) " +
+         "WITH collect(node) AS nodes " +
+         "WHERE size(nodes) = size($ids) " +
+         "UNWIND $relations AS relation " +
+         "WITH nodes[relation.parent] AS parent, nodes[relation.child] AS child " +
+         "CREATE (parent)-[:CONTAINS_KEY]->(child) " +
+         "RETURN count(*) AS created";
+
+    private static final String CREATE_VALUE_RELATIONS =
+         "MATCH (node) WHERE id(node) IN $ids " +
+         "WITH node ORDER BY id(node) " +
+         "WITH collect(node) AS nodes " +
+         "WHERE size(nodes) = size($ids) " +
+         "UNWIND $relations AS relation " +
+         "WITH nodes[relation.parent] AS parent, nodes[relation.child] AS child " +
+         "CREATE (parent)-[:CONTAINS_VALUE]->(child) " +
+         "RETURN count(*) AS created";
+
+    private static final String FIND_DOCUMENT =
+         "MATCH (file) WHERE id(file) = $file " +
+         "MATCH (document:YAML:Document {hash: $hash}) " +
+         "WHERE document.size = $size AND NOT (file)-[:CONTAINS_DOCUMENT]->(document) " +
+         "RETURN document LIMIT 1";
+
+    private static final String REMOVE_NODES =
+         "MATCH (node) WHERE id(node) IN $nodes DETACH DELETE node";
+
+    private final Store store;
+    private final YAMLFileDescriptor fileDescriptor;
+    private final int batchSize;
+    private final long stagingLimit;
+    private final ScanStatistics statistics;
+    private final ScanEvents events;
+
+    private List<Node> stagedDocuments = new ArrayList<>();
+    private List<Node> stagedKeys = new ArrayList<>();
+    private List<Node> stagedValues = new ArrayList<>();
+    private Relations keyRelations = new Relations();
+    private Relations valueRelations = new Relations();
+
+    /**
+     * The numbers of staged keys, values and relations at the start of
+     * the current document.
+     */
+    private int keysBeforeDocument = 0;
+    private int valuesBeforeDocument = 0;
+    private int keyRelationsBeforeDocument = 0;
+    private int valueRelationsBeforeDocument = 0;
+
+    /**
+     * Ids of the keys and values of the current document written before
+     * the end of the document.
+     */
+    private long[] documentIds = new long[64];
+    private int documentWritten = 0;
+
+    /**
+     * Ids of the nodes written before the file has been read completely.
+     */
+    private long[] writtenIds = new long[64];
+    private int written = 0;
+
+    /**
+     * Creates the batch for the given file.
+     *
+     * @param batchSize    The maximum number of nodes or relations per write.
+     * @param stagingLimit The number of staged keys and values which are
+     *                     written before the end of the file, or zero to
+     *                     stage all keys and values of the file.
+     */
+    DescriptorBatch(Store store, YAMLFileDescriptor fileDescriptor, int batchSize, long stagingLimit,
+                    ScanStatistics statistics, ScanEvents events) {
+        this.store = store;
+        this.fileDescriptor = fileDescriptor;
+        this.batchSize = batchSize;
+        this.stagingLimit = stagingLimit;
+        this.statistics = statistics;
+        this.events = events;
+    }
+
+    /**
+     * Stages a document, which is added to the file as soon as it is
+     * written.
+     *
+     * @param match The match of the keys on the top level of the document.
+     */
+    Node createDocument(FQNFilter.Match match) {
+        Node document = new Node(null, null, null, null, 0);
+
+        document.match = match;
+        document.staged = true;
+        stagedDocuments.add(document);
+        keysBeforeDocument = stagedKeys.size();
+        valuesBeforeDocument = stagedValues.size();
+        keyRelationsBeforeDocument = keyRelations.size;
+        valueRelationsBeforeDocument = valueRelations.size;
+        documentWritten = 0;
+
+        return document;
+    }
+
+    Node createKey(String name, String fullQualifiedName, String path, int position, FQNFilter.Match match) {
+        Node key = new Node(name, fullQualifiedName, null, indexable(path), position);
+
+        key.match = match;
+
+        return key;
+    }
+
+    /**
+     * Creates a value, which is not staged yet.
+     *
+     * @param path  The path of an item of a sequence, or {@code null}.
+     * @param match The match of the key or value containing the value.
+     */
+    Node createValue(String value, String path, int position, FQNFilter.Match match) {
+        Node node = new Node(null, null, value, indexable(path), position);
+
+        node.match = match;
+
+        return node;
+    }
+
+    /**
+     * Returns the given path, or {@code null} if it is too long to be
+     * indexed.
+     */
+    private static String indexable(String path) {
+        return path != null && path.length() > YAMLPathDescriptor.MAX_PATH_LENGTH ? null : path;
+    }
+
+    /**
+     * Stages a key or a value, which is written together with the
+     * relations to it.
+     */
+    void stage(Node node) {
+        node.staged = true;
+
+        if (node.isKey()) {
+            stagedKeys.add(node);
+        } else {
+            stagedValues.add(node);
+        }
+    }
+
+    /**
+     * Sets the hash of the current document and replaces it by a document
+     * with the same hash already written, if any.
+     *
+     * @return {@code true} if the document has been replaced, so that its
+     *         keys and values are not written.
+     */
+    boolean deduplicate(Node document, String hash) {
+        document.hash = hash;
+
+        if (document.id != null) {
+            // The document has been written before its hash was known
+            return false;
+        }
+
+        document.size = (long) (stagedKeys.size() - keysBeforeDocument + stagedValues.size() - valuesBeforeDocument);
+
+        YAMLDocumentDescriptor original;
+
+        Map<String, Object> parameters = new HashMap<>();
+
+        parameters.put("file", fileDescriptor.getId());
+        parameters.put("hash", hash);
+        parameters.put("size", document.size);
+
+        try (Query.Result<CompositeRowObject> result = store.executeQuery(FIND_DOCUMENT, parameters)) {
+            Iterator<CompositeRowObject> rows = result.iterator();
+
+            if (!rows.hasNext()) {
+                return false;
+            }
+
+            original = rows.next().get("document", YAMLDocumentDescriptor.class);
+        }
+
+        // Nothing has been written since the start of the document, so all nodes staged since then belong to it
+        stagedKeys.subList(keysBeforeDocument, stagedKeys.size()).clear();
+        stagedValues.subList(valuesBeforeDocument, stagedValues.size()).clear();
+        keyRelations.truncate(keyRelationsBeforeDocument);
+        valueRelations.truncate(valueRelationsBeforeDocument);
+        document.descriptor = original;
+
+        return true;
+    }
+
+    /**
+     * Marks the current document invalid and drops its keys and values,
+     * including the ones already written.
+     *
+     * @param reason The reason why the document could not be scanned.
+     */
+    void fail(Node document, String reason) {
+        stagedKeys.subList(keysBeforeDocument, stagedKeys.size()).clear();
+        stagedValues.subList(valuesBeforeDocument, stagedValues.size()).clear();
+        keyRelations.truncate(keyRelationsBeforeDocument);
+        valueRelations.truncate(valueRelationsBeforeDocument);
+        document.reason = reason;
+
+        if (document.descriptor != null) {
+            // The document has been written before it failed
+            document.descriptor.setValid(false);
+            document.descriptor.setReason(reason);
+        }
+
+        if (documentWritten > 0) {
+            long[] ids = Arrays.copyOf(documentIds, documentWritten);
+            List<Long> nodes = Arrays.stream(ids).boxed().collect(Collectors.toList());
+            int kept = 0;
+
+            Arrays.sort(ids);
+
+            for (int i = 0; i < written; i++) {
+                if (Arrays.binarySearch(ids, writtenIds[i]) < 0) {
+                    writtenIds[kept++] = writtenIds[i];
+                }
+            }
+
+            written = kept;
+            documentWritten = 0;
+            store.executeQuery(REMOVE_NODES, singletonMap("nodes", nodes)).close();
+        }
+    }
+
+    void addKey(Node parent, Node key) {
+        keyRelations.add(parent, key);
+        writeIfFull();
+    }
+
+    void addValue(Node parent, Node value) {
+        valueRelations.add(parent, value);
+        writeIfFull();
+    }
+
+    /**
+     * Writes all staged nodes and relations to the store, after the file
+     * has been read completely.
+     */
+    void commit() {
+        write();
+        written = 0;
+    }
+
+    /**
+     * Drops all staged nodes and relations and removes the nodes already
+     * written for the file from the store.
+     */
+    void discard() {
+        stagedDocuments.clear();
+        stagedKeys.clear();
+        stagedValues.clear();
+        keyRelations.clear();
+        valueRelations.clear();
+
+        if (written > 0) {
+            List<Long> nodes = Arrays.stream(writtenIds, 0, written).boxed().collect(Collectors.toList());
+
+            store.executeQuery(REMOVE_NODES, singletonMap("nodes", nodes)).close();
+            written = 0;
+        }
+    }
+
+    private void writeIfFull() {
+        if (stagingLimit > 0 && stagedKeys.size() + stagedValues.size() >= stagingLimit) {
+            write();
+        }
+    }
+
+    private void write() {
+        long start = System.nanoTime();
+        ScanEvents.Phase phase = events.beginWrite();
+        int documents = stagedDocuments.size();
+        int keys = stagedKeys.size();
+        int values = stagedValues.size();
+
+        for (Node document : stagedDocuments) {
+            YAMLDocumentDescriptor documentDescriptor = document.descriptor;
+
+            if (documentDescriptor == null) {
+                documentDescriptor = store.create(YAMLDocumentDescriptor.class);
+                documentDescriptor.setHash(document.hash);
+                documentDescriptor.setSize(document.size);
+                documentDescriptor.setValid(document.reason == null);
+                documentDescriptor.setReason(document.reason);
+                document.descriptor = documentDescriptor;
+                document.id = documentDescriptor.getId();
+                written(document.id);
+            }
+
+            fileDescriptor.getDocuments().add(documentDescriptor);
+        }
+
+        stagedDocuments.clear();
+
+        createNodes(CREATE_KEYS, stagedKeys, keysBeforeDocument);
+        createNodes(CREATE_VALUES, stagedValues, valuesBeforeDocument);
+        createRelations(CREATE_KEY_RELATIONS, keyRelations);
+        createRelations(CREATE_VALUE_RELATIONS, valueRelations);
+        // All nodes and relations staged since the start of the document have been written
+        keysBeforeDocument = 0;
+        valuesBeforeDocument = 0;
+        keyRelationsBeforeDocument = 0;
+        valueRelationsBeforeDocument = 0;
+        phase.end(0, documents, keys, values);
+        statistics.write(System.nanoTime() - start);
+    }
+
+    /**
+     * Writes the given keys or values, which belong to the current document
+     * starting with the given index.
+     */
+    private void createNodes(String query, List<Node> nodes, int firstOfDocument) {
+        for (int from = 0; from < nodes.size(); from += batchSize) {
+            List<Node> batch = nodes.subList(from, Math.min(from + batchSize, nodes.size()));
+            List<Map<String, Object>> rows = new ArrayList<>(batch.size());
+
+            for (int i = 0; i < batch.size(); i++) {
+                Node node = batch.get(i);
+                Map<String, Object> row = new HashMap<>();
+
+                row.put("index", i);
+                row.put("name", node.name);
+                row.put("fullQualifiedName", node.fullQualifiedName);
+                row.put("value", node.value);
+                row.put("path", node.path);
+                row.put("position", node.position);
+                row.put("items", node.items);
+                row.put("json", node.json);
+                rows.add(row);
+            }
+
+            int created = 0;
+
+            try (Query.Result<CompositeRowObject> result = store.executeQuery(query, singletonMap("nodes", rows))) {
+                for (CompositeRowObject row : result) {
+                    int index = row.get("index", Number.class).intValue();
+                    Node node = batch.get(index);
+
+                    node.id = row.get("id", Number.class).longValue();
+                    written(node.id);
+
+                    if (from + index >= firstOfDocument) {
+                        writtenOfDocument(node.id);
+                    }
+
+                    created++;
+                }
+            }
+
+            if (created != batch.size()) {
+                throw new FileScanException(format("Created %d of %d nodes.", created, batch.size()));
+            }
+        }
+
+        nodes.clear();
+    }
+
+    private void written(long id) {
+        if (written == writtenIds.length) {
+            writtenIds = Arrays.copyOf(writtenIds, written * 2);
+        }
+
+        writtenIds[written++] = id;
+    }
+
+    private void writtenOfDocument(long id) {
+        if (documentWritten == documentIds.length) {
+            documentIds = Arrays.copyOf(documentIds, documentWritten * 2);
+        }
+
+        documentIds[documentWritten++] = id;
+    }
+
+    private void createRelations(String query, Relations relations) {
+        for (int from = 0; from < relations.size; from += batchSize) {
+            int to = Math.min(from + batchSize, relations.size);
+            TreeMap<Long, Integer> indexes = new TreeMap<>();
+
+            for (int i = from; i < to; i++) {
+                indexes.put(relations.parents[i].id, 0);
+                indexes.put(relations.children[i].id, 0);
+            }
+
+            int index = 0;
+
+            for (Map.Entry<Long, Integer> entry : indexes.entrySet()) {
+                entry.setValue(index++);
+            }
+
+            List<Map<String, Object>> rows = new ArrayList<>(to - from);
+
+            for (int i = from; i < to; i++) {
+                Map<String, Object> row = new HashMap<>();
+
+                row.put("parent", indexes.get(relations.parents[i].id));
+                row.put("child", indexes.get(relations.children[i].id));
+                rows.add(row);
+            }
+
+            Map<String, Object> parameters = new HashMap<>();
+
+            parameters.put("ids", new ArrayList<>(indexes.keySet()));
+            parameters.put("relations", rows);
+
+            try (Query.Result<CompositeRowObject> result = store.executeQuery(query, parameters)) {
+                long created = result.iterator().next().get("created", Number.class).longValue();
+
+                if (created != rows.size()) {
+                    // Relations are only created if all nodes are found, as they refer to them by position
+                    throw new FileScanException(format("Created %d of %d relations, as not all of the %d nodes " +
+                                                       "written before have been found.", created, rows.size(),
+                                                       indexes.size()));
+                }
+            }
+        }
+
+        relations.clear();
+    }
+
+    /**
+     * Staged relations of one type, stored as parallel arrays of their
+     * parent and child nodes.
+     */
+    private static class Relations {
+        private Node[] parents = new Node[64];
+        private Node[] children = new Node[64];
+        private int size = 0;
+
+        void add(Node parent, Node child) {
+            if (size == parents.length) {
+                parents = Arrays.copyOf(parents, size * 2);
+                children = Arrays.copyOf(children, size * 2);
+            }
+
+            parents[size] = parent;
+            children[size] = child;
+            size++;
+        }
+
+        void clear() {
+            truncate(0);
+        }
+
+        void truncate(int newSize) {
+            Arrays.fill(parents, newSize, size, null);
+            Arrays.fill(children, newSize, size, null);
+            size = newSize;
+        }
+    }
+
+    /**
+     * A key, value or document. The id is assigned as soon as the node has
+     * been written to the store.
+     */
+    static class Node {
+        private final String name;
+        private final String fullQualifiedName;
+        private final String value;
+        private final String path;
+        private final int position;
+        private FQNFilter.Match match;
+        private FQNFilter.Match foldMatch;
+        private List<String> items;
+        private boolean folded;
+        private String json;
+        private String hash;
+        private Long size;
+        private String reason;
+        private YAMLDocumentDescriptor descriptor;
+        private boolean staged;
+        private Long id;
+
+        Node(String name, String fullQualifiedName, String value, String path, int position) {
+            this.name = name;
+            this.fullQualifiedName = fullQualifiedName;
+            this.value = value;
+            this.path = path;
+            this.position = position;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isKey() {
+            return fullQualifiedName != null;
+        }
+
+        /**
+         * Returns the match of the full qualified name of the node, which
+         * is the match of its parent for a value.
+         */
+        FQNFilter.Match getMatch() {
+            return match;
+        }
+
+        /**
+         * Returns the match of the full qualified name of a key against the
+         * patterns of the keys to fold.
+         */
+        FQNFilter.Match getFoldMatch() {
+            return foldMatch;
+        }
+
+        void setFoldMatch(FQNFilter.Match foldMatch) {
+            this.foldMatch = foldMatch;
+        }
+
+        boolean isStaged() {
+            return staged;
+        }
+
+        /**
+         * Sets the items of a sequence of scalars assigned to a key, which
+         * are written as property of the key instead of values.
+         */
+        void setItems(List<String> items) {
+            this.items = items;
+        }
+
+        /**
+         * Marks a key whose mapping or sequence is folded into JSON instead
+         * of keys and values.
+         */
+        void fold() {
+            this.folded = true;
+        }
+
+        boolean isFolded() {
+            return folded;
+        }
+
+        void setJSON(String json) {
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+
+/**
+ * Computes the hash of the structure and the scalars of a document from
+ * its events, so that documents with the same content have the same hash
+ * regardless of their formatting, their comments and the quoting of their
+ * scalars.
+ *
+ * <p>Each event is added as a type byte followed by its scalar or anchor,
+ * if any, prefixed with its length. The names of anchors are part of the
+ * hash, as they decide which keys and values are shared by aliases. Each
+ * hash starts with the seed, which identifies the settings of the scanner
+ * affecting the keys and values written for a document.</p>
+ *
+ * <p>The hash is a SHA-256 hash, as documents with the same hash are
+ * shared by all files containing them.</p>
+ */
+class DocumentHash {
+    private static final byte MAPPING = 'M';
+    private static final byte SEQUENCE = 'S';
+    private static final byte END = 'E';
+    private static final byte SCALAR = 'V';
+    private static final byte ANCHOR = '&';
+    private static final byte ALIAS = '*';
+
+    private final MessageDigest digest = sha256Digest();
+    private final byte[] seed;
+    private final byte[] buffer = new byte[1024];
+
+    DocumentHash(String seed) {
+        this.seed = seed.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds the given event of the current document. The start of a
+     * document starts a new hash.
+     */
+    void add(Event event) {
+        if (event instanceof DocumentStartEvent) {
+            digest.reset();
+            digest.update(seed);
+        } else if (event instanceof AliasEvent) {
+            update(ALIAS, ((AliasEvent) event).getAnchor());
+        } else {
+            if (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null) {
+                update(ANCHOR, ((NodeEvent) event).getAnchor());
+            }
+
+            if (event instanceof MappingStartEvent) {
+                digest.update(MAPPING);
+            } else if (event instanceof SequenceStartEvent) {
+                digest.update(SEQUENCE);
+            } else if (event instanceof CollectionEndEvent) {
+                digest.update(END);
+            } else if (event instanceof ScalarEvent) {
+                update(SCALAR, ((ScalarEvent) event).getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the hash of the current document.
+     */
+    String finish() {
+        return YAMLFileScannerPlugin.toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM.", e);
+        }
+    }
+
+    /**
+     * Adds the type and the characters of a scalar or an anchor, in chunks
+     * of the buffer.
+     */
+    private void update(byte type, String value) {
+        int length = value.length();
+
+        buffer[0] = type;
+        buffer[1] = (byte) (length >>> 24);
+        buffer[2] = (byte) (length >>> 16);
+        buffer[3] = (byte) (length >>> 8);
+        buffer[4] = (byte) length;
+
+        int size = 5;
+
+        for (int i = 0; i < length; i++) {
+            if (size + 2 > buffer.length) {
+                digest.update(buffer, 0, size);
+                size = 0;
+            }
+
+            char c = value.charAt(i);
+
+            buffer[size++] = (byte) (c >>> 8);
+            buffer[size++] = (byte) c;
+        }
+
+        digest.update(buffer, 0, size);
+    }
+}
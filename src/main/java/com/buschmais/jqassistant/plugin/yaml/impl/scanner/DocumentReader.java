@@ -0,0 +1,224 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static java.lang.String.format;
+
+/**
+ * Splits a YAML stream into its documents, so that each document is parsed
+ * by a parser of its own and a document which cannot be parsed does not
+ * prevent the following documents from being parsed.
+ *
+ * <p>A document ends before a line starting with the document start marker
+ * {@code ---} and after a line starting with the document end marker
+ * {@code ...}. A marker at the start of a line always ends the document,
+ * even within a scalar: the parser ends a block scalar or a plain scalar
+ * there as well, and YAML does not allow a marker within a quoted scalar.
+ * So an unterminated quoted scalar fails just its own document. Comments,
+ * blank lines and directives before the document start marker belong to
+ * the document. Only the start of each line is examined, the content of
+ * the document is not parsed.</p>
+ *
+ * <p>The reader returns the end of the stream at the end of each document.
+ * {@link #nextDocument()} skips the rest of the current document and
+ * continues with the next one.</p>
+ *
+ * <p>The number of characters of a document may be limited. As the parser
+ * holds a scalar completely in memory before it is checked, this bounds
+ * the memory used for a single scalar while it is read.</p>
+ */
+class DocumentReader extends Reader {
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    private boolean started = false;
+    private boolean end = false;
+    private int line = 1;
+    private int firstLine = 1;
+
+    /**
+     * State of the current line and document. A line is blank until a
+     * character other than a space has been read. A document has content
+     * as soon as a line contains more than a comment or a directive.
+     */
+    private boolean lineStart = true;
+    private boolean lineBlank = true;
+    private boolean content = false;
+    private boolean endAfterLine = false;
+
+    private final long maxLength;
+    private long documentLength = 0;
+    private boolean skipping = false;
+
+    DocumentReader(Reader in) {
+        this(in, 0);
+    }
+
+    /**
+     * Creates the reader of the documents of the given stream.
+     *
+     * @param in        The stream.
+     * @param maxLength The maximum number of characters of a document or
+     *                  zero if not limited.
+     */
+    DocumentReader(Reader in, long maxLength) {
+        this.in = in;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Continues with the next document, skipping the rest of the current
+     * one.
+     *
+     * @return {@code false} if there are no more documents.
+     */
+    boolean nextDocument() throws IOException {
+        if (started) {
+            // The rest of the document is not held in memory, so it is not limited
+            skipping = true;
+            skip(Long.MAX_VALUE);
+            skipping = false;
+
+            if (!fill(1)) {
+                return false;
+            }
+        }
+
+        started = true;
+        end = false;
+        lineStart = true;
+        content = false;
+        endAfterLine = false;
+        firstLine = line;
+        documentLength = 0;
+
+        return true;
+    }
+
+    /**
+     * Returns the number of the line of the file the current document
+     * starts with, counted from one.
+     */
+    int getFirstLine() {
+        return firstLine;
+    }
+
+    @Override
+    public int read(char[] target, int offset, int length) throws IOException {
+        if (end) {
+            return -1;
+        } else if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+
+        while (count < length) {
+            if (lineStart) {
+                fill(4);
+
+                if (isMarker('-')) {
+                    if (content) {
+                        end = true;
+                        break;
+                    }
+
+                    content = true;
+                } else if (isMarker('.')) {
+                    endAfterLine = true;
+                }
+
+                lineStart = false;
+                lineBlank = true;
+            }
+
+            if (position == limit && !fill(1)) {
+                end = true;
+                break;
+            }
+
+            int max = Math.min(limit, position + length - count);
+
+            while (position < max) {
+                char c = buffer[position++];
+
+                target[offset + count++] = c;
+
+                if (c == '\n') {
+                    line++;
+                    lineStart = true;
+                    break;
+                } else if (lineBlank && c != ' ' && c != '\t' && c != '\r') {
+                    lineBlank = false;
+                    content |= c != '#' && c != '%';
+                }
+            }
+
+            if (lineStart && endAfterLine) {
+                end = true;
+                break;
+            }
+        }
+
+        documentLength += count;
+
+        if (maxLength > 0 && documentLength > maxLength && !skipping) {
+            throw new ScanBudget.ExceededException(format("The document starting at line %d is longer than %d " +
+                                                          "characters.", firstLine, maxLength));
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Checks if the current line starts with the marker of three of the
+     * given characters, followed by a space or the end of the line.
+     */
+    private boolean isMarker(char c) {
+        if (limit - position < 3 || buffer[position] != c || buffer[position + 1] != c || buffer[position + 2] != c) {
+            return false;
+        } else if (position + 3 == limit) {
+            // The marker is at the end of the file
+            return true;
+        }
+
+        char next = buffer[position + 3];
+
+        return next == ' ' || next == '\t' || next == '\r' || next == '\n';
+    }
+
+    /**
+     * Reads until at least the given number of characters is buffered or
+     * the end of the file has been reached.
+     *
+     * @return {@code true} if the characters are buffered.
+     */
+    private boolean fill(int characters) throws IOException {
+        while (limit - position < characters && !eof) {
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+
+            int read = in.read(buffer, limit, buffer.length - limit);
+
+            if (read == -1) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+
+        return limit - position >= characters;
+    }
+}
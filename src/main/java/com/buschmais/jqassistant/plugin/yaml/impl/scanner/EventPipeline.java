@@ -0,0 +1,200 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+import org.yaml.snakeyaml.emitter.Emitable;
+import org.yaml.snakeyaml.events.Event;
+
+/**
+ * Runs the parser of a YAML file on a parser thread and passes the
+ * parsed events in chunks to an emitter on the calling thread. Only the
+ * calling thread writes to the store, while the next events are already
+ * parsed.
+ *
+ * <p>The number of chunks waiting for the emitter is bounded, so that the
+ * memory required does not depend on the size of the file. If the emitter
+ * fails, the parser is stopped. The calling thread always waits for the
+ * parser to finish, so that the input of the parser is not read after
+ * {@link #run(Producer, Emitable)} returned.</p>
+ */
+class EventPipeline {
+    static final int CHUNK_SIZE = 1024;
+    static final int CAPACITY = 16;
+
+    private final Executor executor;
+
+    EventPipeline(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the given producer on the parser thread and passes all
+     * events produced by it to the given emitter.
+     */
+    void run(Producer producer, Emitable emitter) throws IOException {
+        ParserTask task = new ParserTask(producer);
+
+        executor.execute(task);
+
+        try {
+            for (Chunk chunk = task.take(); ; chunk = task.take()) {
+                for (Event event : chunk.events) {
+                    emitter.emit(event);
+                }
+
+                if (chunk.failure != null) {
+                    throw rethrow(chunk.failure);
+                }
+                if (chunk.last) {
+                    break;
+                }
+            }
+        } finally {
+            task.abandon();
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable failure) throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IllegalStateException("Failed to parse the YAML document.", failure);
+    }
+
+    /**
+     * Produces the events of a YAML file by passing them to the given sink.
+     */
+    interface Producer {
+        void produce(Emitable sink) throws IOException;
+    }
+
+    private static class Chunk {
+        private final List<Event> events;
+        private final Throwable failure;
+        private final boolean last;
+
+        Chunk(List<Event> events, Throwable failure, boolean last) {
+            this.events = events;
+            this.failure = failure;
+            this.last = last;
+        }
+    }
+
+    private static class ParserTask implements Runnable, Emitable {
+        private final Producer producer;
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(CAPACITY);
+        private List<Event> events = new ArrayList<>(CHUNK_SIZE);
+
+        private boolean abandoned = false;
+        private boolean finished = false;
+        private Thread runner;
+
+        ParserTask(Producer producer) {
+            this.producer = producer;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (abandoned) {
+                    finish();
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+
+            try {
+                producer.produce(this);
+                put(new Chunk(events, null, true));
+            } catch (Throwable e) {
+                if (!isAbandoned()) {
+                    // The emitter waits for the last chunk, so it must be passed even on an interrupt
+                    Thread.interrupted();
+                    try {
+                        put(new Chunk(events, e, true));
+                    } catch (InterruptedIOException stopped) {
+                        // The emitter stopped in the meantime and does not take any further chunks
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    finish();
+                    // Do not leak an interrupt of this task to the next task of the pool thread
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        @Override
+        public void emit(Event event) throws IOException {
+            events.add(event);
+
+            if (events.size() == CHUNK_SIZE) {
+                put(new Chunk(events, null, false));
+                events = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+
+        Chunk take() throws IOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the YAML parser.");
+            }
+        }
+
+        /**
+         * Stops the parser if it is still running and waits until it
+         * has finished.
+         */
+        synchronized void abandon() {
+            abandoned = true;
+
+            if (!finished && runner != null) {
+                runner.interrupt();
+            }
+
+            boolean interrupted = false;
+
+            while (!finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        private void put(Chunk chunk) throws InterruptedIOException {
+            try {
+                chunks.put(chunk);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("The YAML parser has been stopped.");
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which keys are written to the store by matching their full
+ * qualified names against include and exclude patterns.
+ *
+ * <p>A pattern consists of the names of keys separated by dots, e.g.
+ * {@code spec.template}. The name {@code *} matches any single key, a name
+ * containing {@code *} matches keys whose names match the wildcard, and
+ * {@code **} matches any number of keys, including none. A key matching a
+ * pattern is included or excluded together with all keys and values below
+ * it. A key matching an exclude pattern is never written, even if it
+ * matches an include pattern as well. If no include patterns are given,
+ * all keys which are not excluded are included.</p>
+ *
+ * <p>The patterns are compiled once into a trie of their names, which is
+ * traversed while the keys are emitted. The {@link Match} of a key holds
+ * the nodes of the trie reached by its full qualified name, so that the
+ * key of the next level is matched by a single step from the match of its
+ * parent.</p>
+ */
+class FQNFilter {
+    private static final Segment[] NONE = {};
+
+    static final FQNFilter ALL = new FQNFilter(null, null);
+
+    private final Match root;
+
+    /**
+     * Creates the filter for the roots of the tries of the include and
+     * exclude patterns, each one {@code null} if there are no such
+     * patterns.
+     */
+    private FQNFilter(Segment includes, Segment excludes) {
+        Segment[] includeStates = includes == null ? null : closure(includes);
+
+        root = new Match(includeStates == null || isTerminal(includeStates) ? null : includeStates,
+                         excludes == null ? NONE : closure(excludes));
+    }
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param includes The include patterns, all keys are included if empty.
+     * @param excludes The exclude patterns.
+     */
+    static FQNFilter compile(List<String> includes, List<String> excludes) {
+        if (includes.isEmpty() && excludes.isEmpty()) {
+            return ALL;
+        }
+
+        return new FQNFilter(includes.isEmpty() ? null : trie(includes), excludes.isEmpty() ? null : trie(excludes));
+    }
+
+    /**
+     * Returns the match of a document, which is the parent of the keys on
+     * its top level.
+     */
+    Match root() {
+        return root;
+    }
+
+    /**
+     * Matches the key with the given name, whose parent has the given
+     * match. Keys and values below a skipped or included key without any
+     * exclude patterns left share the match of their parent.
+     */
+    Match match(Match parent, String name) {
+        if (parent.isSkipped() || parent.isIncluded() && parent.excludeStates.length == 0) {
+            return parent;
+        }
+
+        Segment[] excludeStates = step(parent.excludeStates, name);
+
+        if (isTerminal(excludeStates)) {
+            return Match.SKIPPED;
+        }
+
+        if (parent.isIncluded()) {
+            return new Match(null, excludeStates);
+        }
+
+        Segment[] includeStates = step(parent.includeStates, name);
+
+        if (includeStates.length == 0) {
+            return Match.SKIPPED;
+        }
+
+        return new Match(isTerminal(includeStates) ? null : includeStates, excludeStates);
+    }
+
+    private static Segment trie(List<String> patterns) {
+        Segment root = new Segment();
+
+        for (String pattern : patterns) {
+            Segment segment = root;
+
+            for (String name : pattern.split("\\.", -1)) {
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("The pattern '" + pattern + "' contains an empty name.");
+                }
+
+                segment = segment.child(name);
+            }
+
+            segment.terminal = true;
+        }
+
+        return root;
+    }
+
+    /**
+     * Returns the nodes of the trie reached from the given nodes by the
+     * key with the given name.
+     */
+    private static Segment[] step(Segment[] states, String name) {
+        if (states.length == 0) {
+            return states;
+        }
+
+        List<Segment> next = new ArrayList<>(states.length + 1);
+
+        for (Segment state : states) {
+            if (state.anyNames) {
+                add(next, state);
+            }
+
+            add(next, state.names.get(name));
+            add(next, state.anyName);
+
+            for (Segment wildcard : state.wildcards.values()) {
+                if (wildcard.wildcard.matcher(name).matches()) {
+                    add(next, wildcard);
+                }
+            }
+        }
+
+        return next.toArray(NONE);
+    }
+
+    /**
+     * Returns the given node of the trie and the nodes of {@code **}
+     * following it, which match without any key.
+     */
+    private static Segment[] closure(Segment segment) {
+        List<Segment> states = new ArrayList<>(2);
+
+        add(states, segment);
+
+        return states.toArray(NONE);
+    }
+
+    private static void add(List<Segment> states, Segment segment) {
+        while (segment != null && !states.contains(segment)) {
+            states.add(segment);
+            segment = segment.anyKeys;
+        }
+    }
+
+    private static boolean isTerminal(Segment[] states) {
+        for (Segment state : states) {
+            if (state.terminal) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The result of matching the full qualified name of a key.
+     */
+    static final class Match {
+        static final Match SKIPPED = new Match(NONE, NONE);
+
+        /**
+         * The nodes of the tries reached by the full qualified name. The
+         * nodes of the include patterns are {@code null} if the key is
+         * included, the key is skipped if none of them is reached.
+         */
+        private final Segment[] includeStates;
+        private final Segment[] excludeStates;
+
+        private Match(Segment[] includeStates, Segment[] excludeStates) {
+            this.includeStates = includeStates;
+            this.excludeStates = excludeStates;
+        }
+
+        /**
+         * Checks if the key matches an include pattern, so that it is
+         * written together with all keys and values below it which are not
+         * excluded.
+         */
+        boolean isIncluded() {
+            return includeStates == null;
+        }
+
+        /**
+         * Checks if neither the key nor any key below it can be included.
+         */
+        boolean isSkipped() {
+            return includeStates != null && includeStates.length == 0;
+        }
+    }
+
+    /**
+     * A node of the trie, reached by the names of a pattern up to this
+     * node.
+     */
+    private static class Segment {
+        private final Map<String, Segment> names = new HashMap<>();
+        private final Map<String, Segment> wildcards = new HashMap<>();
+        private Pattern wildcard;
+        private Segment anyName;
+        private Segment anyKeys;
+        private boolean anyNames;
+        private boolean terminal;
+
+        Segment child(String name) {
+            if ("**".equals(name)) {
+                if (anyKeys == null) {
+                    anyKeys = new Segment();
+                    anyKeys.anyNames = true;
+                }
+
+                return anyKeys;
+            } else if ("*".equals(name)) {
+                if (anyName == null) {
+                    anyName = new Segment();
+                }
+
+                return anyName;
+            } else if (name.contains("*")) {
+                return wildcards.computeIfAbsent(name, n -> {
+                    Segment segment = new Segment();
+
+                    segment.wildcard = Pattern.compile(Pattern.quote(n).replace("*", "\\E.*\\Q"));
+
+                    return segment;
+                });
+            }
+
+            return names.computeIfAbsent(name, n -> new Segment());
+        }
+    }
+}
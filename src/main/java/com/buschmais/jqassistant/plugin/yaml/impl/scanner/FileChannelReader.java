@@ -0,0 +1,286 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Reads a local YAML file in UTF-8 through a file channel in large chunks
+ * into a buffer on the heap, instead of a stream of small buffers.
+ *
+ * <p>Runs of ASCII characters, which make up most of the content of a
+ * typical YAML file, are copied from a chunk directly into the buffer of
+ * the caller. Only other characters are decoded by a decoder for UTF-8,
+ * which reports malformed input like the reader used for streams. The MD5
+ * hash and the number of bytes of the file are updated with each chunk, as
+ * for the digesting stream of a file which is read as a stream.</p>
+ *
+ * <p>Only the decoding is cheaper than for a stream. The parser still
+ * reads the characters from its own buffer one at a time, so the gain for
+ * a whole scan is small, see {@code InputBenchmark}.</p>
+ */
+class FileChannelReader extends Reader {
+    private static final byte[] UTF_8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final MessageDigest md5;
+    private final ScanStatistics statistics;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                                                                 .onMalformedInput(CodingErrorAction.REPORT)
+                                                                 .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * The chunk read from the channel, of which the bytes between the
+     * position and the limit of {@link #bytes} have not been read yet.
+     */
+    private final byte[] chunk;
+    private final ByteBuffer bytes;
+
+    /**
+     * The second char decoded while only a single char was requested, e.g.
+     * the low surrogate of a surrogate pair, or -1.
+     */
+    private int pendingChar = -1;
+
+    /**
+     * The number of bytes of the file which have not been read yet.
+     */
+    private long remaining;
+
+    private boolean closed = false;
+
+    private FileChannelReader(FileChannel channel, long size, int chunkSize, MessageDigest md5,
+                              ScanStatistics statistics) {
+        this.channel = channel;
+        this.remaining = size;
+        this.md5 = md5;
+        this.statistics = statistics;
+        this.chunk = new byte[(int) Math.min(chunkSize, Math.max(size, UTF_8_BOM.length + 1))];
+        this.bytes = ByteBuffer.wrap(chunk);
+        this.bytes.limit(0);
+    }
+
+    /**
+     * Opens the given file, if it has at least the given number of bytes
+     * and is not encoded in UTF-16 or UTF-32.
+     *
+     * @return The reader of the file, or {@code null} if the file must be
+     * read as a stream.
+     */
+    static FileChannelReader open(File file, long threshold, MessageDigest md5, ScanStatistics statistics)
+         throws IOException {
+        return open(file, threshold, CHUNK_SIZE, md5, statistics);
+    }
+
+    static FileChannelReader open(File file, long threshold, int chunkSize, MessageDigest md5,
+                                  ScanStatistics statistics) throws IOException {
+        long length = file.length();
+
+        if (length < threshold) {
+            return null;
+        }
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            // The start of the file is checked without adding it to the hash
+            ByteBuffer start = ByteBuffer.allocate(UTF_8_BOM.length);
+
+            while (start.hasRemaining() && channel.read(start, start.position()) != -1) {
+                // Files may be shorter than the byte order mark
+            }
+
+            start.flip();
+
+            boolean bom = hasPrefix(start, UTF_8_BOM);
+
+            if (!bom && start.remaining() >= 2 &&
+                (start.get(0) == 0 || start.get(1) == 0 || (start.get(0) & 0xFE) == 0xFE)) {
+                // A byte order mark of UTF-16 or UTF-32 or a zero byte of UTF-16 without one
+                channel.close();
+                return null;
+            }
+
+            FileChannelReader reader = new FileChannelReader(channel, channel.size(), chunkSize, md5, statistics);
+
+            if (bom) {
+                reader.fill();
+                reader.bytes.position(UTF_8_BOM.length);
+            }
+
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("The reader of the file has been closed.");
+        } else if (length == 0) {
+            return 0;
+        }
+
+        int start = offset;
+        int end = offset + length;
+
+        if (pendingChar != -1) {
+            buffer[offset++] = (char) pendingChar;
+            pendingChar = -1;
+        }
+
+        while (offset < end && (bytes.hasRemaining() || fill())) {
+            int position = bytes.position();
+            int ascii = Math.min(end - offset, bytes.limit() - position);
+            int i = 0;
+
+            while (i < ascii && chunk[position + i] >= 0) {
+                buffer[offset + i] = (char) chunk[position + i];
+                i++;
+            }
+
+            bytes.position(position + i);
+            offset += i;
+
+            if (i < ascii) {
+                int decoded = decode(buffer, offset, end);
+
+                // Nothing is decoded if the chunk ends within a character
+                if (decoded == offset && !fill()) {
+                    break;
+                }
+
+                offset = decoded;
+            }
+        }
+
+        return offset == start ? -1 : offset - start;
+    }
+
+    /**
+     * Decodes the run of non-ASCII bytes at the current position of the
+     * chunk into the given part of the buffer.
+     *
+     * @return The offset after the decoded characters.
+     */
+    private int decode(char[] buffer, int offset, int end) throws IOException {
+        if (end - offset == 1) {
+            // The next character may be a surrogate pair, which does not fit into a single char
+            char[] chars = new char[2];
+            CharBuffer out = CharBuffer.wrap(chars);
+
+            decode(out);
+
+            if (out.position() == 0) {
+                return offset;
+            }
+
+            if (out.position() == 2) {
+                pendingChar = chars[1];
+            }
+
+            buffer[offset] = chars[0];
+
+            return end;
+        }
+
+        CharBuffer out = CharBuffer.wrap(buffer, offset, end - offset);
+
+        decode(out);
+
+        return out.position();
+    }
+
+    private void decode(CharBuffer out) throws IOException {
+        int limit = bytes.limit();
+        int nonAscii = bytes.position();
+
+        // The ASCII characters after the run are copied directly again
+        while (nonAscii < limit && chunk[nonAscii] < 0) {
+            nonAscii++;
+        }
+
+        bytes.limit(nonAscii);
+
+        try {
+            // Unless the run ends with the chunk, its last character must be complete
+            boolean endOfInput = nonAscii < limit || remaining == 0;
+            CoderResult result = decoder.decode(bytes, out, endOfInput);
+
+            if (result.isError()) {
+                result.throwException();
+            }
+        } finally {
+            bytes.limit(limit);
+            decoder.reset();
+        }
+    }
+
+    /**
+     * Reads the next chunk from the channel, after the bytes of the current
+     * chunk which have not been read yet.
+     *
+     * @return {@code false} if the whole file has been read.
+     */
+    private boolean fill() throws IOException {
+        if (remaining == 0) {
+            return false;
+        }
+
+        bytes.compact();
+
+        int from = bytes.position();
+        int length = (int) Math.min(bytes.remaining(), remaining);
+
+        bytes.limit(from + length);
+
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) == -1) {
+                throw new EOFException("The file has been truncated while it was read.");
+            }
+        }
+
+        remaining -= length;
+        md5.update(chunk, from, length);
+        statistics.addBytes(length);
+        bytes.flip();
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private static boolean hasPrefix(ByteBuffer content, byte[] prefix) {
+        if (content.remaining() < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (content.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
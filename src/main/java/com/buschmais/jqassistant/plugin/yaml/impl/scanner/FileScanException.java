@@ -0,0 +1,14 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+/**
+ * Signals a failure which fails the scan of the whole file, e.g. an
+ * exceeded limit or an inconsistent write to the store, unlike a single
+ * document which cannot be parsed.
+ */
+class FileScanException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    FileScanException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,106 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The events of the scan of a YAML file for the Java Flight Recorder. This
+ * class must only be loaded if {@link ScanEvents.FlightRecorder#AVAILABLE}
+ * is true, as the plugin also runs on JVMs without the flight recorder.
+ */
+class FlightRecorderScanEvents implements ScanEvents {
+
+    private final String path;
+
+    FlightRecorderScanEvents(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public Phase beginFile() {
+        return begin(new FileScanEvent());
+    }
+
+    @Override
+    public Phase beginParse() {
+        return begin(new ParseEvent());
+    }
+
+    @Override
+    public Phase beginDocument() {
+        return begin(new DocumentEvent());
+    }
+
+    @Override
+    public Phase beginWrite() {
+        return begin(new WriteEvent());
+    }
+
+    private Phase begin(ScanPhaseEvent event) {
+        if (!event.isEnabled()) {
+            return Phase.NONE;
+        }
+
+        event.begin();
+
+        return (bytes, documents, keys, values) -> {
+            event.end();
+
+            if (event.shouldCommit()) {
+                event.path = path;
+                event.bytes = bytes;
+                event.documents = documents;
+                event.keys = keys;
+                event.values = values;
+                event.commit();
+            }
+        };
+    }
+
+    @Category({ "jQAssistant", "YAML" })
+    abstract static class ScanPhaseEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Documents")
+        long documents;
+
+        @Label("Keys")
+        long keys;
+
+        @Label("Values")
+        long values;
+    }
+
+    @Name("com.buschmais.jqassistant.plugin.yaml.FileScan")
+    @Label("YAML File Scan")
+    @Description("Scan of a YAML file, from reading the first byte to writing the last document")
+    static class FileScanEvent extends ScanPhaseEvent {
+    }
+
+    @Name("com.buschmais.jqassistant.plugin.yaml.Parse")
+    @Label("YAML Parse")
+    @Description("Reading and parsing of a YAML file and staging of its documents")
+    static class ParseEvent extends ScanPhaseEvent {
+    }
+
+    @Name("com.buschmais.jqassistant.plugin.yaml.Document")
+    @Label("YAML Document")
+    @Description("Reading of a single document of a YAML file")
+    static class DocumentEvent extends ScanPhaseEvent {
+    }
+
+    @Name("com.buschmais.jqassistant.plugin.yaml.Write")
+    @Label("YAML Store Write")
+    @Description("Writing of staged documents, keys and values of a YAML file to the store")
+    static class WriteEvent extends ScanPhaseEvent {
+    }
+}
@@ -0,0 +1,128 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.buschmais.jqassistant.core.scanner.api.Scanner;
+import com.buschmais.jqassistant.core.scanner.api.ScannerPlugin.Requires;
+import com.buschmais.jqassistant.core.scanner.api.Scope;
+import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
+import com.buschmais.jqassistant.plugin.common.api.model.TarArchiveDescriptor;
+import com.buschmais.jqassistant.plugin.common.api.scanner.AbstractScannerPlugin;
+import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.AbstractFileResource;
+import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Scans packaged Helm charts, e.g. {@code nginx-1.2.3.tgz}, without
+ * extracting them.
+ *
+ * <p>A local gzip compressed tar archive is taken for a Helm chart if its
+ * first file is the {@code Chart.yaml} of the top level directory, as
+ * written by {@code helm package}. Other {@code .tgz} archives are left to
+ * other plugins. Archives within other archives are not accepted, as their
+ * stream cannot be read a second time.</p>
+ *
+ * <p>The chart is decompressed while it is read and passed to the tar
+ * archive scanner of the common plugin, which scans one entry after the
+ * other straight from the stream. Only the YAML files among the entries
+ * are passed on, so they are scanned by {@link YAMLFileScannerPlugin} like
+ * any other YAML file, with the path of the entry within the archive as
+ * file name, e.g. {@code /nginx/values.yaml}. Neither the archive nor any
+ * entry is held in memory or written to a temporary file.</p>
+ */
+@Requires(FileDescriptor.class)
+public class HelmChartScannerPlugin extends AbstractScannerPlugin<FileResource, TarArchiveDescriptor> {
+
+    /**
+     * Supported file extension for packaged Helm charts.
+     */
+    public final static String TGZ_FILE_EXTENSION = ".tgz";
+
+    private static final Pattern CHART_FILE = Pattern.compile("[^/]+/Chart\\.yaml");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public boolean accepts(FileResource item, String path, Scope scope) throws IOException {
+        return path.toLowerCase().endsWith(TGZ_FILE_EXTENSION) && !(item instanceof AbstractFileResource) &&
+               isChart(item);
+    }
+
+    @Override
+    public TarArchiveDescriptor scan(FileResource item, String path, Scope scope, Scanner scanner) throws IOException {
+        try (TarArchiveInputStream archive = new YAMLEntriesInputStream(decompress(item))) {
+            return scanner.scan(archive, path, scope);
+        }
+    }
+
+    /**
+     * Checks if the first file of the given archive is the
+     * {@code Chart.yaml} of its top level directory. Only the headers up
+     * to this file are read.
+     */
+    private static boolean isChart(FileResource item) {
+        try (TarArchiveInputStream archive = new TarArchiveInputStream(decompress(item))) {
+            for (TarArchiveEntry entry = archive.getNextTarEntry(); entry != null;
+                 entry = archive.getNextTarEntry()) {
+                if (!entry.isDirectory()) {
+                    return CHART_FILE.matcher(entry.getName()).matches();
+                }
+            }
+        } catch (IOException e) {
+            // Not a gzip compressed tar archive
+        }
+
+        return false;
+    }
+
+    private static InputStream decompress(FileResource item) throws IOException {
+        return new GZIPInputStream(new BufferedInputStream(item.createStream(), BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    /**
+     * Tar archive stream which skips all entries except YAML files, so that
+     * the tar archive scanner passes only these to the scanner.
+     */
+    private static class YAMLEntriesInputStream extends TarArchiveInputStream {
+        private boolean reading = false;
+
+        YAMLEntriesInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public TarArchiveEntry getNextTarEntry() throws IOException {
+            if (reading) {
+                // The stream reads the headers of long names and extended attributes itself
+                return super.getNextTarEntry();
+            }
+
+            reading = true;
+
+            try {
+                TarArchiveEntry entry = super.getNextTarEntry();
+
+                while (entry != null && !isYAMLFile(entry)) {
+                    entry = super.getNextTarEntry();
+                }
+
+                return entry;
+            } finally {
+                reading = false;
+            }
+        }
+
+        private static boolean isYAMLFile(TarArchiveEntry entry) {
+            String name = entry.getName().toLowerCase();
+
+            return !entry.isDirectory() && (name.endsWith(YAMLFileScannerPlugin.YAML_FILE_EXTENSION) ||
+                                            name.endsWith(YAMLFileScannerPlugin.YML_FILE_EXTENSION));
+        }
+    }
+}
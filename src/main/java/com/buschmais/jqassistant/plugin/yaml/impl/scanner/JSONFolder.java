@@ -0,0 +1,137 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.Arrays;
+
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+
+import static java.lang.String.format;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Serializes a mapping or a sequence to JSON while its events are emitted,
+ * so that a folded subtree is stored as a single string instead of keys
+ * and values.
+ *
+ * <p>Scalars are written as JSON strings, as the scanner does not resolve
+ * the types of scalars. A blank scalar used as value is written as
+ * {@code null}, like a key without value. Aliases must be replaced by the
+ * events of the anchored node before they are added.</p>
+ */
+class JSONFolder {
+    private final StringBuilder json = new StringBuilder();
+
+    /**
+     * Stack of the open mappings and sequences, with the number of keys
+     * and values or items already written to each one.
+     */
+    private boolean[] mappings = new boolean[16];
+    private int[] counts = new int[16];
+    private int depth = 0;
+
+    /**
+     * Adds the next event of the folded mapping or sequence.
+     *
+     * @return {@code true} if the folded mapping or sequence is complete.
+     */
+    boolean add(Event event) {
+        if (event instanceof MappingStartEvent || event instanceof SequenceStartEvent) {
+            boolean mapping = event instanceof MappingStartEvent;
+
+            beforeValue(event);
+
+            if (depth == mappings.length) {
+                mappings = Arrays.copyOf(mappings, depth * 2);
+                counts = Arrays.copyOf(counts, depth * 2);
+            }
+
+            mappings[depth] = mapping;
+            counts[depth++] = 0;
+            json.append(mapping ? '{' : '[');
+        } else if (event instanceof CollectionEndEvent) {
+            json.append(mappings[--depth] ? '}' : ']');
+        } else if (event instanceof ScalarEvent) {
+            String value = ((ScalarEvent) event).getValue();
+
+            if (isKey()) {
+                if (counts[depth - 1]++ > 0) {
+                    json.append(',');
+                }
+
+                quote(value).append(':');
+            } else {
+                beforeValue(event);
+
+                if (isBlank(value)) {
+                    json.append("null");
+                } else {
+                    quote(value);
+                }
+            }
+        } else {
+            throw new IllegalStateException(format("Found %s in a folded mapping or sequence.", event));
+        }
+
+        return depth == 0;
+    }
+
+    String toJSON() {
+        return json.toString();
+    }
+
+    private boolean isKey() {
+        return depth > 0 && mappings[depth - 1] && counts[depth - 1] % 2 == 0;
+    }
+
+    private void beforeValue(Event event) {
+        if (depth > 0) {
+            if (isKey()) {
+                throw new IllegalStateException(format("Found %s as key of a folded mapping, which cannot be " +
+                                                       "written as JSON.", event));
+            }
+
+            if (!mappings[depth - 1] && counts[depth - 1] > 0) {
+                json.append(',');
+            }
+
+            counts[depth - 1]++;
+        }
+    }
+
+    private StringBuilder quote(String value) {
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+
+        return json.append('"');
+    }
+}
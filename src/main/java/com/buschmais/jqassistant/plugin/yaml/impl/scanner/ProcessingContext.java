@@ -1,83 +1,282 @@
 package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
 
 import java.util.ArrayDeque;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDescriptor;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLKeyDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.impl.scanner.DescriptorBatch.Node;
 
 class ProcessingContext {
-    private ArrayDeque<YAMLDescriptor> stackedContext = new ArrayDeque<>();
-    private LinkedList<YAMLEmitter.ParseContext> context = new LinkedList<>();
+    private static final YAMLEmitter.ParseContext[] PARSE_CONTEXTS = YAMLEmitter.ParseContext.values();
 
-    public void push(YAMLDescriptor newContext) {
+    private ArrayDeque<Node> stackedContext = new ArrayDeque<>();
+
+    /**
+     * Stack of parse contexts stored as their ordinals, the top of the
+     * stack is the last element. Checking and changing the stack does not
+     * allocate any objects.
+     */
+    private byte[] context = new byte[32];
+    private int contextDepth = 0;
+
+    /**
+     * State of the emitter for each level of the parse context stack, see
+     * {@link YAMLEmitter#nextState(int, YAMLEmitter.ParseContext)}.
+     */
+    private int[] states = new int[32];
+
+    /**
+     * Names of all stacked keys, each followed by a dot. It is extended
+     * if a key is pushed and truncated if the key is popped again.
+     */
+    private StringBuilder fqnPrefix = new StringBuilder();
+    private int[] fqnPrefixLengths = new int[16];
+    private int stackedKeys = 0;
+
+    /**
+     * Hash of the prefix and the hashes of the prefix before each stacked
+     * key, so that the hash of a full qualified name is known before it is
+     * looked up in the cache.
+     */
+    private int fqnPrefixHash = 0;
+    private int[] fqnPrefixHashes = new int[16];
+
+    /**
+     * Path of the stacked keys and of the current item of each sequence,
+     * e.g. {@code spec.containers[0].}. Like the prefix of the full
+     * qualified names it is extended if a key is pushed and truncated if
+     * the key is popped again.
+     */
+    private StringBuilder pathPrefix = new StringBuilder();
+    private int[] pathPrefixLengths = new int[16];
+
+    /**
+     * Stack of the open mappings and sequences, with the position of the
+     * next key or item of each one and the length of the path before each
+     * sequence.
+     */
+    private int[] positions = new int[16];
+    private int[] sequencePathLengths = new int[16];
+    private boolean[] sequences = new boolean[16];
+    private int collectionDepth = 0;
+
+    private final StringCache strings;
+
+    ProcessingContext() {
+        this(new StringCache(0));
+    }
+
+    /**
+     * Creates the context, which looks up the full qualified names of keys
+     * in the given cache before building them.
+     */
+    ProcessingContext(StringCache strings) {
+        this.strings = strings;
+    }
+
+    public void push(Node newContext) {
         stackedContext.push(newContext);
+
+        if (newContext.isKey()) {
+            if (stackedKeys == fqnPrefixLengths.length) {
+                fqnPrefixLengths = Arrays.copyOf(fqnPrefixLengths, stackedKeys * 2);
+                fqnPrefixHashes = Arrays.copyOf(fqnPrefixHashes, stackedKeys * 2);
+                pathPrefixLengths = Arrays.copyOf(pathPrefixLengths, stackedKeys * 2);
+            }
+
+            fqnPrefixHashes[stackedKeys] = fqnPrefixHash;
+            pathPrefixLengths[stackedKeys] = pathPrefix.length();
+            fqnPrefixLengths[stackedKeys++] = fqnPrefix.length();
+            fqnPrefix.append(newContext.getName()).append('.');
+            pathPrefix.append(newContext.getName()).append('.');
+            fqnPrefixHash = 31 * StringCache.hash(fqnPrefixHash, newContext.getName()) + '.';
+        }
+    }
+
+    public Node peek() {
+        return stackedContext.peek();
     }
 
-    @SuppressWarnings("unchecked")
-    public <T extends YAMLDescriptor> T peek() {
-        return (T)stackedContext.peek();
+    /**
+     * Returns the stacked nodes, starting with the top of the stack.
+     */
+    public Iterable<Node> stack() {
+        return stackedContext;
     }
 
-    @SuppressWarnings("unchecked")
-    public <T extends YAMLDescriptor> T pop() {
-        return (T)stackedContext.pop();
+    public Node pop() {
+        Node node = stackedContext.pop();
+
+        if (node.isKey()) {
+            fqnPrefix.setLength(fqnPrefixLengths[--stackedKeys]);
+            fqnPrefixHash = fqnPrefixHashes[stackedKeys];
+            pathPrefix.setLength(pathPrefixLengths[stackedKeys]);
+        }
+
+        return node;
     }
 
     public void pushContextEvent(YAMLEmitter.ParseContext event) {
-        context.push(event);
+        if (contextDepth == context.length) {
+            context = Arrays.copyOf(context, contextDepth * 2);
+            states = Arrays.copyOf(states, contextDepth * 2);
+        }
+
+        states[contextDepth] = YAMLEmitter.nextState(getState(), event);
+        context[contextDepth++] = (byte) event.ordinal();
     }
 
     public YAMLEmitter.ParseContext getContext() {
-        return context.peek();
+        return contextDepth == 0 ? null : PARSE_CONTEXTS[context[contextDepth - 1]];
+    }
+
+    /**
+     * Returns the state of the emitter for the current parse context
+     * stack.
+     */
+    public int getState() {
+        return contextDepth == 0 ? YAMLEmitter.NO_CONTEXT : states[contextDepth - 1];
     }
 
+    /**
+     * Checks if the top of the context stack matches the given chain of
+     * contexts. The last element of the chain is compared with the top of
+     * the stack.
+     */
     public boolean isContext(YAMLEmitter.ParseContext... eventChain) {
         int pathLength = eventChain.length;
-        int currentContextDepth = context.size();
 
-        boolean result = true;
+        if (pathLength > contextDepth) {
+            return false;
+        }
 
-        if (pathLength <= currentContextDepth) {
-            List<YAMLEmitter.ParseContext> tail = context.subList(0, pathLength);
+        int offset = contextDepth - pathLength;
 
-            for (int i = pathLength - 1; i >= 0; i--) {
-                if (eventChain[i] != tail.get(pathLength - 1 - i)) {
-                    result = false;
-                    break;
-                }
+        for (int i = pathLength - 1; i >= 0; i--) {
+            if (eventChain[i].ordinal() != context[offset + i]) {
+                return false;
             }
-        } else {
-            result = false;
         }
 
-        return result;
+        return true;
     }
 
     public void popContextEvent(int elements) {
-        for (int i = 0; i < elements; i++) {
-            context.pop();
+        if (elements > contextDepth) {
+            throw new IllegalStateException("Cannot pop " + elements + " parse contexts from a stack of depth " +
+                                            contextDepth);
         }
+
+        contextDepth -= elements;
+    }
+
+    /**
+     * Returns the number of keys on the stack, which is the depth of the
+     * next key minus one.
+     */
+    public int getKeyDepth() {
+        return stackedKeys;
     }
 
     public String buildNextFQN(String lastElement) {
-        StringBuilder builder = new StringBuilder();
+        int prefixLength = fqnPrefix.length();
+        String name = strings.intern(fqnPrefix.append(lastElement), StringCache.hash(fqnPrefixHash, lastElement));
 
-        Iterator<YAMLDescriptor> descItr = stackedContext.descendingIterator();
+        fqnPrefix.setLength(prefixLength);
 
-        while (descItr.hasNext()) {
-            YAMLDescriptor yamld = descItr.next();
+        return name;
+    }
 
-            if (YAMLKeyDescriptor.class.isAssignableFrom(yamld.getClass())) {
-                YAMLKeyDescriptor keyDescriptor = (YAMLKeyDescriptor) yamld;
-                builder.append(keyDescriptor.getName()).append('.');
-            }
+    /**
+     * Returns the path of the next key, which is the full qualified name
+     * of the key including the position of each item of a sequence.
+     */
+    public String buildNextPath(String lastElement) {
+        int prefixLength = pathPrefix.length();
+        String path = pathPrefix.append(lastElement).toString();
+
+        pathPrefix.setLength(prefixLength);
+
+        return path;
+    }
+
+    /**
+     * Returns the path of the current item of the innermost sequence.
+     */
+    public String buildItemPath() {
+        return pathPrefix.substring(0, pathPrefix.length() - 1);
+    }
+
+    /**
+     * Returns the path of the item at the given position of the innermost
+     * sequence, e.g. of an item before the current one.
+     */
+    public String buildItemPath(int position) {
+        int sequencePathLength = sequencePathLengths[collectionDepth - 1];
+
+        return pathPrefix.substring(0, sequencePathLength > 0 ? sequencePathLength - 1 : 0) + '[' + position + ']';
+    }
+
+    /**
+     * Opens a mapping or a sequence, whose keys or items are numbered
+     * starting with zero.
+     */
+    public void enterCollection(boolean sequence) {
+        if (collectionDepth == positions.length) {
+            positions = Arrays.copyOf(positions, collectionDepth * 2);
+            sequencePathLengths = Arrays.copyOf(sequencePathLengths, collectionDepth * 2);
+            sequences = Arrays.copyOf(sequences, collectionDepth * 2);
         }
 
-        String name = builder.append(lastElement).toString();
+        positions[collectionDepth] = 0;
+        sequencePathLengths[collectionDepth] = pathPrefix.length();
+        sequences[collectionDepth++] = sequence;
+    }
 
-        return name;
+    /**
+     * Closes the innermost mapping or sequence. The path is truncated to
+     * the path before the sequence.
+     */
+    public void leaveCollection() {
+        if (sequences[--collectionDepth]) {
+            pathPrefix.setLength(sequencePathLengths[collectionDepth]);
+        }
+    }
+
+    /**
+     * Checks if the innermost open collection is a sequence.
+     */
+    public boolean isInSequence() {
+        return collectionDepth > 0 && sequences[collectionDepth - 1];
+    }
+
+    /**
+     * Starts the next item of the innermost sequence and appends its
+     * position to the path, e.g. {@code containers[1].}.
+     *
+     * @return The position of the item.
+     */
+    public int nextItem() {
+        int position = positions[collectionDepth - 1]++;
+        int sequencePathLength = sequencePathLengths[collectionDepth - 1];
+
+        // The dot after the name of the key is replaced by the position
+        pathPrefix.setLength(sequencePathLength > 0 ? sequencePathLength - 1 : 0);
+        pathPrefix.append('[').append(position).append("].");
+
+        return position;
+    }
+
+    /**
+     * Returns the position of the current item of the innermost sequence.
+     */
+    public int getItemPosition() {
+        return positions[collectionDepth - 1] - 1;
+    }
+
+    /**
+     * Returns the position of the next key of the innermost mapping.
+     */
+    public int nextKeyPosition() {
+        return collectionDepth == 0 ? 0 : positions[collectionDepth - 1]++;
     }
 }
@@ -0,0 +1,108 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Limits the resources used to scan a single YAML file, so that a hostile
+ * or accidentally huge file is rejected early instead of stalling the
+ * whole scan. A limit of zero disables the corresponding check.
+ *
+ * <p>The budget is checked by the emitter for each event, the time is
+ * checked for every {@value #EVENTS_PER_TIME_CHECK} events. If a limit is
+ * exceeded, an {@link ExceededException} is thrown, whose message
+ * describes the exceeded limit.</p>
+ */
+class ScanBudget {
+    static final int EVENTS_PER_TIME_CHECK = 256;
+
+    private final long maxNodes;
+    private final long maxDepth;
+    private final long maxAliasExpansions;
+    private final long maxScalarLength;
+    private final long maxScanTime;
+    private final long start = System.nanoTime();
+
+    private long nodes = 0;
+    private long depth = 0;
+    private long aliasExpansions = 0;
+    private long events = 0;
+
+    /**
+     * Creates the budget for a file, whose scan time starts now.
+     *
+     * @param maxNodes           The maximum number of keys and values.
+     * @param maxDepth           The maximum nesting depth of mappings and sequences.
+     * @param maxAliasExpansions The maximum number of events replayed for aliases.
+     * @param maxScalarLength    The maximum number of characters of a scalar.
+     * @param maxScanTime        The maximum scan time in milliseconds.
+     */
+    ScanBudget(long maxNodes, long maxDepth, long maxAliasExpansions, long maxScalarLength, long maxScanTime) {
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+        this.maxAliasExpansions = maxAliasExpansions;
+        this.maxScalarLength = maxScalarLength;
+        this.maxScanTime = TimeUnit.MILLISECONDS.toNanos(maxScanTime);
+    }
+
+    /**
+     * Counts an event and checks the scan time every few events.
+     */
+    void event() {
+        if (maxScanTime > 0 && ++events % EVENTS_PER_TIME_CHECK == 0 && System.nanoTime() - start > maxScanTime) {
+            throw new ExceededException(format("The scan took longer than %d ms.",
+                                               TimeUnit.NANOSECONDS.toMillis(maxScanTime)));
+        }
+    }
+
+    void node() {
+        if (maxNodes > 0 && ++nodes > maxNodes) {
+            throw new ExceededException(format("The file contains more than %d keys and values.", maxNodes));
+        }
+    }
+
+    void enterCollection() {
+        if (maxDepth > 0 && ++depth > maxDepth) {
+            throw new ExceededException(format("The mappings and sequences are nested deeper than %d levels.",
+                                               maxDepth));
+        }
+    }
+
+    void leaveCollection() {
+        depth--;
+    }
+
+    /**
+     * Leaves all open mappings and sequences of a document which could not
+     * be scanned to its end.
+     */
+    void leaveDocument() {
+        depth = 0;
+    }
+
+    void aliasExpansion() {
+        if (maxAliasExpansions > 0 && ++aliasExpansions > maxAliasExpansions) {
+            throw new ExceededException(format("The aliases of the file expand to more than %d events.",
+                                               maxAliasExpansions));
+        }
+    }
+
+    void scalar(String value) {
+        if (maxScalarLength > 0 && value != null && value.length() > maxScalarLength) {
+            throw new ExceededException(format("The file contains a scalar longer than %d characters.",
+                                               maxScalarLength));
+        }
+    }
+
+    /**
+     * Signals that the scan of a file exceeded one of the limits.
+     */
+    static class ExceededException extends FileScanException {
+        private static final long serialVersionUID = 1L;
+
+        ExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+/**
+ * Reports the phases of the scan of a YAML file as events of the Java
+ * Flight Recorder, so that a recording of a slow scan shows where its time
+ * is spent. If the JVM does not provide the flight recorder, e.g. Java 8
+ * before update 262, the phases are not reported.
+ *
+ * <p>Each phase is started by one of the begin methods and ended by
+ * {@link Phase#end(long, long, long, long)}. A phase whose event is not
+ * recorded is a shared instance doing nothing, so that the events cost
+ * nearly nothing if no recording is running.</p>
+ */
+interface ScanEvents {
+
+    /**
+     * The events of a scan if the flight recorder is not available.
+     */
+    ScanEvents NONE = new ScanEvents() {
+        @Override
+        public Phase beginFile() {
+            return Phase.NONE;
+        }
+
+        @Override
+        public Phase beginParse() {
+            return Phase.NONE;
+        }
+
+        @Override
+        public Phase beginDocument() {
+            return Phase.NONE;
+        }
+
+        @Override
+        public Phase beginWrite() {
+            return Phase.NONE;
+        }
+    };
+
+    /**
+     * Returns the events of the scan of the file with the given path.
+     */
+    static ScanEvents of(String path) {
+        return FlightRecorder.AVAILABLE ? new FlightRecorderScanEvents(path) : NONE;
+    }
+
+    /**
+     * Begins the scan of the file, from reading the first byte to writing
+     * the last document.
+     */
+    Phase beginFile();
+
+    /**
+     * Begins reading and parsing the file and staging its documents.
+     */
+    Phase beginParse();
+
+    /**
+     * Begins reading a single document of the file.
+     */
+    Phase beginDocument();
+
+    /**
+     * Begins writing staged documents, keys and values to the store.
+     */
+    Phase beginWrite();
+
+    /**
+     * A phase of the scan of a file.
+     */
+    interface Phase {
+
+        /**
+         * The phase of an event which is not recorded.
+         */
+        Phase NONE = (bytes, documents, keys, values) -> {
+        };
+
+        /**
+         * Ends the phase, which read the given number of bytes and read or
+         * wrote the given number of documents, keys and values.
+         */
+        void end(long bytes, long documents, long keys, long values);
+    }
+
+    /**
+     * Checks once whether the JVM provides the flight recorder. It does not
+     * refer to any class of the flight recorder, so that checking does not
+     * load {@link FlightRecorderScanEvents} on a JVM without it.
+     */
+    final class FlightRecorder {
+
+        /**
+         * Whether the JVM provides the flight recorder.
+         */
+        static final boolean AVAILABLE = isAvailable();
+
+        private FlightRecorder() {
+        }
+
+        private static boolean isAvailable() {
+            try {
+                Class.forName("jdk.jfr.Event", false, ScanEvents.class.getClassLoader());
+
+                return true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+    }
+}
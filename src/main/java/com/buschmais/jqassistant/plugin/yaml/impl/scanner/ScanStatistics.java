@@ -0,0 +1,159 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Collects the statistics of the scan of a single YAML file. Collecting
+ * them costs an increment per event and two calls of
+ * {@link System#nanoTime()} per write to the store, so they are always
+ * collected and only storing them is optional.
+ *
+ * <p>The parse time is the time of the scan not spent writing to the
+ * store, i.e. reading and parsing the file and building the staged
+ * documents.</p>
+ */
+class ScanStatistics {
+    private final long start = System.nanoTime();
+
+    private long bytes = 0;
+    private long documents = 0;
+    private long keys = 0;
+    private long values = 0;
+    private long depth = 0;
+    private long maxDepth = 0;
+    private long writeTime = 0;
+    private long scanTime = 0;
+
+    /**
+     * Returns a stream counting the bytes read from the given stream.
+     */
+    InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+
+                if (read != -1) {
+                    addBytes(1);
+                }
+
+                return read;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+
+                if (read > 0) {
+                    addBytes(read);
+                }
+
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Adds the given number of bytes read from the file.
+     */
+    void addBytes(long read) {
+        bytes += read;
+    }
+
+    void document() {
+        documents++;
+    }
+
+    void key() {
+        keys++;
+    }
+
+    void value() {
+        values++;
+    }
+
+    /**
+     * Removes the keys and values of a document which are not written, as
+     * an identical document has already been written.
+     */
+    void drop(long droppedKeys, long droppedValues) {
+        keys -= droppedKeys;
+        values -= droppedValues;
+    }
+
+    void enterCollection() {
+        if (++depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    void leaveCollection() {
+        depth--;
+    }
+
+    /**
+     * Leaves all open mappings and sequences of a document which could not
+     * be scanned to its end.
+     */
+    void leaveDocument() {
+        depth = 0;
+    }
+
+    /**
+     * Adds the time of a write to the store in nanoseconds.
+     */
+    void write(long time) {
+        writeTime += time;
+    }
+
+    /**
+     * Ends the scan of the file.
+     */
+    void finish() {
+        finish(System.nanoTime() - start);
+    }
+
+    /**
+     * Ends the scan of the file after the given time in nanoseconds.
+     */
+    void finish(long time) {
+        scanTime = time;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getDocuments() {
+        return documents;
+    }
+
+    long getKeys() {
+        return keys;
+    }
+
+    long getValues() {
+        return values;
+    }
+
+    long getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the time of the whole scan in nanoseconds.
+     */
+    long getScanTime() {
+        return scanTime;
+    }
+
+    long getWriteTime() {
+        return writeTime;
+    }
+
+    long getParseTime() {
+        return scanTime - writeTime;
+    }
+}
@@ -0,0 +1,148 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Aggregates the statistics of all YAML files scanned by the plugin, so
+ * that the expensive files can be found after the scan.
+ *
+ * <p>Only the scan time of each file and the paths of the slowest files
+ * are kept. The slowest files are kept in a heap of the given size, whose
+ * head is the fastest of them.</p>
+ */
+class ScanSummary {
+    private final int slowestFiles;
+    private final PriorityQueue<SlowFile> slowest;
+
+    private long[] scanTimes = new long[64];
+    private int files = 0;
+    private int invalidFiles = 0;
+    private long bytes = 0;
+    private long keys = 0;
+    private long values = 0;
+    private long writeTime = 0;
+
+    ScanSummary(int slowestFiles) {
+        this.slowestFiles = slowestFiles;
+        this.slowest = new PriorityQueue<>(Math.max(1, slowestFiles), Comparator.comparingLong(file -> file.scanTime));
+    }
+
+    void add(String path, boolean valid, ScanStatistics statistics) {
+        if (files == scanTimes.length) {
+            scanTimes = Arrays.copyOf(scanTimes, files * 2);
+        }
+
+        scanTimes[files++] = statistics.getScanTime();
+
+        if (!valid) {
+            invalidFiles++;
+        }
+
+        bytes += statistics.getBytes();
+        keys += statistics.getKeys();
+        values += statistics.getValues();
+        writeTime += statistics.getWriteTime();
+
+        if (slowestFiles > 0) {
+            if (slowest.size() < slowestFiles) {
+                slowest.add(new SlowFile(path, statistics.getScanTime()));
+            } else if (slowest.peek().scanTime < statistics.getScanTime()) {
+                slowest.poll();
+                slowest.add(new SlowFile(path, statistics.getScanTime()));
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return files == 0;
+    }
+
+    /**
+     * Returns the scan time in nanoseconds, which is not exceeded by the
+     * given percentage of the files.
+     */
+    long percentile(double percentage) {
+        if (files == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(scanTimes, files);
+
+        Arrays.sort(sorted);
+
+        int rank = (int) Math.ceil(percentage / 100 * files);
+
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the paths and scan times of the slowest files, the slowest
+     * first.
+     */
+    List<String> slowestFiles() {
+        List<SlowFile> sorted = new ArrayList<>(slowest);
+        List<String> lines = new ArrayList<>(sorted.size());
+
+        sorted.sort(Comparator.comparingLong((SlowFile file) -> file.scanTime).reversed());
+
+        for (SlowFile file : sorted) {
+            lines.add(format("%d ms %s", NANOSECONDS.toMillis(file.scanTime), file.path));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Logs the summary and starts a new one.
+     */
+    void log(Logger logger) {
+        if (isEmpty()) {
+            return;
+        }
+
+        logger.info("Scanned {} YAML files ({} invalid), {} bytes, {} keys, {} values, {} ms writing to the store.",
+                    files, invalidFiles, bytes, keys, values, NANOSECONDS.toMillis(writeTime));
+        logger.info("Scan time per YAML file: p50 {} ms, p99 {} ms.", NANOSECONDS.toMillis(percentile(50)),
+                    NANOSECONDS.toMillis(percentile(99)));
+
+        if (!slowest.isEmpty()) {
+            logger.info("Slowest YAML files:");
+
+            for (String file : slowestFiles()) {
+                logger.info("  {}", file);
+            }
+        }
+
+        clear();
+    }
+
+    private void clear() {
+        scanTimes = new long[64];
+        files = 0;
+        invalidFiles = 0;
+        bytes = 0;
+        keys = 0;
+        values = 0;
+        writeTime = 0;
+        slowest.clear();
+    }
+
+    private static class SlowFile {
+        private final String path;
+        private final long scanTime;
+
+        SlowFile(String path, long scanTime) {
+            this.path = path;
+            this.scanTime = scanTime;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+/**
+ * A bounded cache of the names, full qualified names and short values of
+ * keys, which repeat many times within a file and across files, e.g.
+ * {@code apiVersion} or {@code metadata.name} in Kubernetes manifests. A
+ * string found in the cache replaces an equal one, so that the staged
+ * nodes share a single instance. A full qualified name found in the cache
+ * is not built at all, as it is looked up by its characters.
+ *
+ * <p>The cache is a table of a fixed size, in which each string may be
+ * stored in one of two neighbouring slots selected by its hash. A string
+ * not found replaces the older of the two strings. So the cache needs no
+ * allocation besides the strings not found and never grows. The hashes of
+ * the cached strings are kept in a table of their own, so that a lookup
+ * only reads the cached strings whose hash matches. It is not thread-safe
+ * and used by the scanning thread only.</p>
+ */
+class StringCache {
+
+    /**
+     * The maximum length of a value to be cached. Longer values are
+     * rarely repeated and would only evict shorter ones.
+     */
+    static final int MAX_VALUE_LENGTH = 64;
+
+    private final String[] table;
+    private final int[] hashes;
+    private final int mask;
+
+    /**
+     * Creates a cache of at least the given number of strings, or a cache
+     * which returns each string unchanged if the size is zero.
+     */
+    StringCache(int size) {
+        int capacity = size == 0 ? 0 : Math.max(2, Integer.highestOneBit(size - 1) << 1);
+
+        this.table = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 2;
+    }
+
+    /**
+     * Returns the cached string equal to the given name, or the name
+     * itself after it has been added to the cache.
+     */
+    String intern(String name) {
+        if (name == null || table.length == 0) {
+            return name;
+        }
+
+        int hash = name.hashCode();
+        int slot = slot(hash);
+
+        if (hashes[slot] == hash && name.equals(table[slot])) {
+            return table[slot];
+        }
+
+        if (hashes[slot + 1] == hash && name.equals(table[slot + 1])) {
+            return moveToFront(slot);
+        }
+
+        add(slot, hash, name);
+
+        return name;
+    }
+
+    /**
+     * Returns the cached string with the characters of the given sequence,
+     * or a new string after it has been added to the cache.
+     */
+    String intern(CharSequence characters) {
+        return intern(characters, hash(characters));
+    }
+
+    /**
+     * Returns the cached string with the characters of the given sequence,
+     * whose hash is already known.
+     *
+     * @param hash The hash of the characters, as returned by
+     *             {@link #hash(int, String)} and {@link String#hashCode()}.
+     */
+    String intern(CharSequence characters, int hash) {
+        if (table.length == 0) {
+            return characters.toString();
+        }
+
+        int slot = slot(hash);
+
+        if (hashes[slot] == hash && contentEquals(table[slot], characters)) {
+            return table[slot];
+        }
+
+        if (hashes[slot + 1] == hash && contentEquals(table[slot + 1], characters)) {
+            return moveToFront(slot);
+        }
+
+        String string = characters.toString();
+
+        add(slot, hash, string);
+
+        return string;
+    }
+
+    /**
+     * Returns the cached string equal to the given value, if the value is
+     * short enough to be cached.
+     */
+    String internValue(String value) {
+        return value == null || value.length() > MAX_VALUE_LENGTH ? value : intern(value);
+    }
+
+    /**
+     * Returns the first of the two slots of a string with the given hash.
+     */
+    private int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Moves the string found in the second slot to the first one, so that
+     * the least recently used string is replaced.
+     */
+    private String moveToFront(int slot) {
+        String string = table[slot + 1];
+        int hash = hashes[slot + 1];
+
+        table[slot + 1] = table[slot];
+        hashes[slot + 1] = hashes[slot];
+        table[slot] = string;
+        hashes[slot] = hash;
+
+        return string;
+    }
+
+    private void add(int slot, int hash, String string) {
+        table[slot + 1] = table[slot];
+        hashes[slot + 1] = hashes[slot];
+        table[slot] = string;
+        hashes[slot] = hash;
+    }
+
+    /**
+     * Returns the hash of the characters with the given hash followed by
+     * the given string, without reading the characters again.
+     */
+    static int hash(int hash, String string) {
+        for (int i = string.length(); i > 0; i--) {
+            hash *= 31;
+        }
+
+        return hash + string.hashCode();
+    }
+
+    /**
+     * Returns the hash of the characters, which is equal to the hash of a
+     * string with these characters.
+     */
+    private static int hash(CharSequence characters) {
+        int hash = 0;
+
+        for (int i = 0, length = characters.length(); i < length; i++) {
+            hash = 31 * hash + characters.charAt(i);
+        }
+
+        return hash;
+    }
+
+    private static boolean contentEquals(String string, CharSequence characters) {
+        return string != null && string.contentEquals(characters);
+    }
+}
@@ -1,21 +1,28 @@
 package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 import com.buschmais.jqassistant.core.scanner.api.Scanner;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLKeyBucket;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLKeyDescriptor;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLValueBucket;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLValueDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.impl.scanner.DescriptorBatch.Node;
 
 import org.yaml.snakeyaml.emitter.Emitable;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
 import org.yaml.snakeyaml.events.DocumentEndEvent;
 import org.yaml.snakeyaml.events.DocumentStartEvent;
 import org.yaml.snakeyaml.events.Event;
 import org.yaml.snakeyaml.events.MappingEndEvent;
 import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
 import org.yaml.snakeyaml.events.ScalarEvent;
 import org.yaml.snakeyaml.events.SequenceEndEvent;
 import org.yaml.snakeyaml.events.SequenceStartEvent;
@@ -34,222 +41,849 @@ import static org.apache.commons.lang3.StringUtils.trimToEmpty;
 
 /**
  * Emitter used to build the graph for a found YAML file.
+ *
+ * <p>The emitter is a state machine. Each transition is registered for an
+ * event type and a chain of parse contexts, which has to match the top of
+ * the parse context stack. The state is the longest part of the top of the
+ * stack which starts any of the chains. It is kept for each level of the
+ * stack by {@link ProcessingContext}, so that it is known after a pop as
+ * well, and tells all chains matching the stack. So the transition for an
+ * event is resolved by a single lookup of the state and the event type in
+ * a table built once, which holds the first registered transition whose
+ * chain matches. Events without a transition are unsupported
+ * structures.</p>
+ *
+ * <p>The documents, keys and values are staged and written to the store by
+ * {@link #commit()} once all events of the file have been emitted. If the
+ * file cannot be scanned, {@link #discard()} drops them instead.</p>
+ *
+ * <p>By default an alias is replaced by the events of the node it refers
+ * to, so that the keys and values of the anchored node are written again
+ * for each alias. If aliases are shared, an alias in the position of a
+ * value is written as relations to the keys and values already written
+ * for the anchored node instead. The full qualified names of these keys
+ * are the ones at the position of the anchor.</p>
+ *
+ * <p>If sequences are stored compactly, the scalars of a sequence assigned
+ * to a key are collected and written as property of the key at the end of
+ * the sequence. As soon as the sequence turns out to contain a mapping or
+ * another sequence, the collected scalars are written as values.</p>
+ *
+ * <p>If the full qualified names of keys are filtered, a key is only
+ * staged if it is included or if a key or value below it is staged. All
+ * other keys and values are still parsed to keep track of the structure,
+ * but never written.</p>
+ *
+ * <p>If a key is folded, by its depth or by its full qualified name, the
+ * mapping or sequence assigned to it is serialized to JSON while its events
+ * are emitted and written as property of the key. No keys or values are
+ * created for the folded mapping or sequence.</p>
+ *
+ * <p>If documents are deduplicated, the hash of each document is computed
+ * from the events emitted for it, before aliases are replaced. At the end
+ * of the document, it is replaced by an identical document already
+ * written, if any.</p>
+ *
+ * <p>If a document cannot be scanned, it is marked invalid and its keys
+ * and values are dropped, while the documents before and after it are
+ * kept. All events up to the next {@link StreamStartEvent} are ignored, as
+ * the parser emits them for each document of the file. Exceeded limits of
+ * the {@link ScanBudget} and other {@link FileScanException}s still fail the
+ * whole file.</p>
  */
 class YAMLEmitter implements Emitable {
-    private final YAMLFileDescriptor fileDescriptor;
-    private final Scanner currentScanner;
-    private ProcessingContext processingContext = new ProcessingContext();
+    /*
+     * Context chains of the transitions. The last element of a chain is
+     * compared with the top of the parse context stack.
+     */
+    private static final ParseContext[] ANY = {};
+    private static final ParseContext[] DOCUMENT = { DOCUMENT_CTX };
+    private static final ParseContext[] MAPPING = { MAPPING_CXT };
+    private static final ParseContext[] SEQUENCE = { SEQUENCE_CXT };
+    private static final ParseContext[] KEY = { MAPPING_CXT, MAPPING_KEY_CXT };
+    private static final ParseContext[] VALUE_OF_KEY = { MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT };
+    private static final ParseContext[] MAPPING_AS_VALUE_OF_KEY = { MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_CXT };
+    private static final ParseContext[] SEQUENCE_AS_VALUE_OF_KEY = { MAPPING_CXT, MAPPING_KEY_CXT, SEQUENCE_CXT };
+    private static final ParseContext[] SEQUENCE_IN_DOCUMENT = { DOCUMENT_CTX, SEQUENCE_CXT };
+    private static final ParseContext[] SEQUENCE_IN_SEQUENCE = { SEQUENCE_CXT, SEQUENCE_CXT };
+    private static final ParseContext[] VALUE_OF_KEY_IN_NESTED_MAPPING =
+         { MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT };
+
+    /**
+     * State of an empty parse context stack.
+     */
+    static final int NO_CONTEXT = 0;
+
+    /**
+     * All transitions in the order of their registration.
+     */
+    private static final List<Transition> REGISTERED = new ArrayList<>();
+
+    /**
+     * The state following each state if a parse context is pushed, indexed
+     * by the state and the ordinal of the parse context.
+     */
+    private static final int[][] NEXT_STATES;
+
+    /**
+     * Transitions indexed by the state and the ordinal of the event type,
+     * {@code null} for unsupported events.
+     */
+    private static final Transition[][] TRANSITIONS;
+
+    static {
+        on(EventType.DOCUMENT_START, ANY, YAMLEmitter::startDocument);
+        on(EventType.DOCUMENT_END, DOCUMENT, YAMLEmitter::endDocument);
+
+        on(EventType.MAPPING_START, ANY, YAMLEmitter::startMapping);
+        on(EventType.MAPPING_END, MAPPING_AS_VALUE_OF_KEY, YAMLEmitter::endMappingAsValueOfKey);
+        on(EventType.MAPPING_END, MAPPING, YAMLEmitter::endMapping);
+        on(EventType.MAPPING_END, VALUE_OF_KEY_IN_NESTED_MAPPING, YAMLEmitter::endMappingAfterValueOfNestedKey);
+        on(EventType.MAPPING_END, VALUE_OF_KEY, YAMLEmitter::endMappingAfterValueOfKey);
+
+        on(EventType.SEQUENCE_START, SEQUENCE, YAMLEmitter::startSequenceInSequence);
+        on(EventType.SEQUENCE_START, ANY, YAMLEmitter::startSequence);
+        on(EventType.SEQUENCE_END, SEQUENCE_AS_VALUE_OF_KEY, YAMLEmitter::endSequenceAsValueOfKey);
+        on(EventType.SEQUENCE_END, SEQUENCE_IN_DOCUMENT, YAMLEmitter::endSequenceInDocument);
+        on(EventType.SEQUENCE_END, SEQUENCE_IN_SEQUENCE, YAMLEmitter::endSequenceInSequence);
+
+        on(EventType.SCALAR, MAPPING, YAMLEmitter::startKey);
+        on(EventType.SCALAR, KEY, YAMLEmitter::valueOfKey);
+        on(EventType.SCALAR, VALUE_OF_KEY, YAMLEmitter::endKeyAndStartNextKey);
+        on(EventType.SCALAR, SEQUENCE, YAMLEmitter::valueInBucket);
+        on(EventType.SCALAR, DOCUMENT, YAMLEmitter::valueInBucket);
+
+        // Each state is a chain or the start of a chain, the first one is the empty stack
+        List<List<ParseContext>> states = new ArrayList<>();
+
+        states.add(new ArrayList<>());
+
+        for (Transition transition : REGISTERED) {
+            for (int length = 1; length <= transition.chain.length; length++) {
+                List<ParseContext> start = Arrays.asList(transition.chain).subList(0, length);
+
+                if (!states.contains(start)) {
+                    states.add(start);
+                }
+            }
+        }
+
+        NEXT_STATES = new int[states.size()][ParseContext.values().length];
+        TRANSITIONS = new Transition[states.size()][EventType.values().length];
+
+        for (int state = 0; state < states.size(); state++) {
+            for (ParseContext context : ParseContext.values()) {
+                List<ParseContext> stack = new ArrayList<>(states.get(state));
+
+                stack.add(context);
+
+                while (!states.contains(stack)) {
+                    stack.remove(0);
+                }
 
-    public YAMLEmitter(YAMLFileDescriptor yamlFileDescriptor, Scanner scanner) {
-        fileDescriptor = yamlFileDescriptor;
-        currentScanner = scanner;
+                NEXT_STATES[state][context.ordinal()] = states.indexOf(stack);
+            }
+
+            for (Transition transition : REGISTERED) {
+                if (TRANSITIONS[state][transition.eventType.ordinal()] == null &&
+                    endsWith(states.get(state), transition.chain)) {
+                    TRANSITIONS[state][transition.eventType.ordinal()] = transition;
+                }
+            }
+        }
+    }
 
-        processingContext.push(yamlFileDescriptor);
+    private final DescriptorBatch batch;
+    private final boolean shareAliases;
+    private final boolean compactSequences;
+    private final ScanBudget budget;
+    private final ScanStatistics statistics;
+    private final ScanEvents events;
+    private final StringCache strings;
+    private final FQNFilter filter;
+    private final long foldDepth;
+    private final FQNFilter fold;
+    private final DocumentHash hash;
+    private ProcessingContext processingContext;
+
+    /**
+     * All completely read anchored nodes of the current document, which
+     * are replayed or shared for each alias referring to them.
+     */
+    private Map<String, AnchorRecording> anchoredNodes = new HashMap<>();
+    private List<AnchorRecording> recordings = new ArrayList<>();
+
+    /**
+     * Anchored nodes referred to by shared aliases, which are recorded
+     * instead of the events of the anchored node.
+     */
+    private Map<Event, AnchorRecording> sharedAliases = new IdentityHashMap<>();
+
+    /**
+     * The scalars of the sequence assigned to the key on top of the stack,
+     * if it is stored compactly and contains only scalars so far.
+     */
+    private List<String> compactItems = null;
+
+    /**
+     * The JSON of the mapping or sequence assigned to the key on top of the
+     * stack, while the key is folded.
+     */
+    private JSONFolder folder = null;
+
+    /**
+     * The phase of the current document and the number of keys and values
+     * of the file before it.
+     */
+    private ScanEvents.Phase documentPhase = ScanEvents.Phase.NONE;
+    private long keysBeforeDocument = 0;
+    private long valuesBeforeDocument = 0;
+
+    /**
+     * The current document, or {@code null} between two documents.
+     */
+    private Node document = null;
+
+    /**
+     * Set if the current document failed, until the events of the next
+     * document are emitted.
+     */
+    private boolean failed = false;
+
+    /**
+     * The reason of the first document of the file which failed.
+     */
+    private String failure = null;
+
+    public YAMLEmitter(YAMLFileDescriptor yamlFileDescriptor, Scanner scanner, int batchSize, long stagingLimit,
+                       boolean shareAliases, boolean compactSequences, ScanBudget budget, ScanStatistics statistics,
+                       ScanEvents events, StringCache strings, FQNFilter filter, long foldDepth, FQNFilter fold,
+                       DocumentHash hash) {
+        batch = new DescriptorBatch(scanner.getContext().getStore(), yamlFileDescriptor, batchSize, stagingLimit,
+                                    statistics, events);
+        this.shareAliases = shareAliases;
+        this.compactSequences = compactSequences;
+        this.budget = budget;
+        this.statistics = statistics;
+        this.events = events;
+        this.strings = strings;
+        this.filter = filter;
+        this.foldDepth = foldDepth;
+        this.fold = fold;
+        this.hash = hash;
+        this.processingContext = new ProcessingContext(strings);
     }
 
     @Override
     public void emit(Event event) throws IOException {
-        EventType typeOfEvent = toEventType(event);
-
-        if (typeOfEvent != null) {
-            switch (typeOfEvent) {
-                case DOCUMENT_START:
-                    handleDocumentStartEvent(event);
-                    break;
-
-                case SEQUENCE_START:
-                    handleSequenceStart(event);
-                    break;
+        if (failed) {
+            if (!(event instanceof StreamStartEvent)) {
+                return;
+            }
 
-                case SEQUENCE_END:
-                    handleSequenceEnd(event);
-                    break;
+            failed = false;
+        }
 
-                case DOCUMENT_END:
-                    handleDocumentEndEvent(event);
-                    break;
+        if (event instanceof DocumentFailure) {
+            fail(((DocumentFailure) event).reason);
+            return;
+        }
 
-                case MAPPING_START:
-                    handleMappingStartEvent(event);
-                    break;
+        try {
+            emitEvent(event);
+        } catch (FileScanException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            fail(e.getMessage());
+        }
+    }
 
-                case MAPPING_END:
-                    handleMappingEndEvent(event);
-                    break;
+    /**
+     * Returns the reason of the first document of the file which could not
+     * be scanned.
+     *
+     * @return the reason or {@code null} if all documents are valid.
+     */
+    public String getFailure() {
+        return failure;
+    }
 
-                case SCALAR:
-                    handleScalarEvent((ScalarEvent) event);
-                    break;
+    private void emitEvent(Event event) {
+        if (hash != null) {
+            hash.add(event);
+        }
 
-                default:
-                    unsupportedYAMLStructure(event);
+        if (event instanceof AliasEvent) {
+            alias(event);
+        } else {
+            if (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null) {
+                AnchorRecording recording = new AnchorRecording(((NodeEvent) event).getAnchor());
+
+                recordings.add(recording);
+                process(event);
+                // The node the keys and values of the anchored node are added to
+                recording.parent = processingContext.peek();
+            } else {
+                process(event);
             }
         }
     }
 
-    protected void handleSequenceStart(Event event) {
-        if (processingContext.isContext(SEQUENCE_CXT)) {
-            // Sequence of sequences...
-            YAMLValueDescriptor valueDescriptor = currentScanner.getContext().getStore()
-                                                                .create(YAMLValueDescriptor.class);
+    /**
+     * Writes the documents of the file to the store after all events of
+     * the file have been emitted.
+     */
+    public void commit() {
+        batch.commit();
+    }
+
+    /**
+     * Drops the documents of a file which could not be scanned or which has
+     * not changed since its last scan, including the keys and values
+     * already written for it.
+     */
+    public void discard() {
+        batch.discard();
+    }
 
-            processingContext.push(valueDescriptor);
-            processingContext.pushContextEvent(SEQUENCE_CXT);
+    /**
+     * Marks the current document invalid, or an invalid document if the
+     * failure occurred between two documents, and resets the state of the
+     * emitter for the next document.
+     */
+    private void fail(String reason) {
+        if (document == null) {
+            documentPhase = events.beginDocument();
+            keysBeforeDocument = statistics.getKeys();
+            valuesBeforeDocument = statistics.getValues();
+            statistics.document();
+            document = batch.createDocument(filter.root());
+        }
 
-        } else {
-            processingContext.pushContextEvent(SEQUENCE_CXT);
+        batch.fail(document, reason);
+        statistics.drop(statistics.getKeys() - keysBeforeDocument, statistics.getValues() - valuesBeforeDocument);
+        statistics.leaveDocument();
+        budget.leaveDocument();
+        documentPhase.end(0, 1, 0, 0);
+        documentPhase = ScanEvents.Phase.NONE;
+        document = null;
+        processingContext = new ProcessingContext(strings);
+        recordings.clear();
+        anchoredNodes.clear();
+        sharedAliases.clear();
+        compactItems = null;
+        folder = null;
+        failed = true;
+
+        if (failure == null) {
+            failure = reason;
         }
     }
 
-    protected void handleSequenceEnd(Event event) {
-        if (processingContext.isContext(MAPPING_CXT, MAPPING_KEY_CXT, SEQUENCE_CXT)) {
-            processingContext.popContextEvent(2);
-            YAMLKeyDescriptor keyForSequence = processingContext.pop();
-            YAMLKeyBucket keyBucketForSequence = processingContext.peek();
+    private void process(Event event) {
+        track(event);
+        record(event);
 
-            keyBucketForSequence.getKeys().add(keyForSequence);
-        } else if (processingContext.isContext(DOCUMENT_CTX, SEQUENCE_CXT)) {
-            processingContext.popContextEvent(1);
-        } else if (processingContext.isContext(SEQUENCE_CXT, SEQUENCE_CXT)) {
-            processingContext.popContextEvent(1);
-            YAMLValueDescriptor value = processingContext.pop();
-            YAMLValueBucket bbb = processingContext.peek();
+        if (folder != null || event instanceof CollectionStartEvent && isFoldedValue()) {
+            fold(event);
+            complete();
+            return;
+        }
 
-            bbb.getValues().add(value);
-        } else {
-            unsupportedYAMLStructure(event);
+        if (compactItems != null && event instanceof CollectionStartEvent) {
+            expandItems();
+        }
+
+        position(event);
+
+        EventType typeOfEvent = toEventType(event);
+
+        if (typeOfEvent != null) {
+            Transition transition = TRANSITIONS[processingContext.getState()][typeOfEvent.ordinal()];
+
+            if (transition == null) {
+                unsupportedYAMLStructure(event);
+            }
+
+            transition.action.accept(this, event);
+            complete();
         }
     }
 
-    protected void handleDocumentEndEvent(Event event) {
-        if (!processingContext.isContext(DOCUMENT_CTX)) {
+    private void alias(Event event) {
+        AnchorRecording anchoredNode = sharedAliases.containsKey(event)
+                                       ? sharedAliases.get(event)
+                                       : anchoredNodes.get(((AliasEvent) event).getAnchor());
+
+        if (anchoredNode == null) {
+            // Unknown anchor or an alias referring to one of its own parents
             unsupportedYAMLStructure(event);
-        } else {
+        }
+
+        if (!shareAliases || !share(event, anchoredNode)) {
+            for (Event anchoredEvent : anchoredNode.events) {
+                if (anchoredEvent instanceof AliasEvent) {
+                    alias(anchoredEvent);
+                } else {
+                    budget.aliasExpansion();
+                    process(anchoredEvent);
+                }
+            }
+        }
+    }
 
+    /**
+     * Adds relations to the keys and values of the given anchored mapping
+     * or sequence if the alias referring to it is in the position of a
+     * value.
+     *
+     * @return {@code false} if the alias refers to a scalar, to a node
+     *         without any staged keys or values or is in another position,
+     *         so that it must be replayed instead.
+     */
+    private boolean share(Event alias, AnchorRecording anchoredNode) {
+        Event start = anchoredNode.events.get(0);
+        Node parent;
+
+        if (start instanceof ScalarEvent) {
+            // A scalar is a single value, which is cheaper to write again
+            return false;
+        } else if (anchoredNode.keys.isEmpty() && anchoredNode.values.isEmpty()) {
+            // Nothing has been staged for the anchored node, as it has been filtered, folded or stored compactly
+            return false;
+        } else if (folder != null || isFoldedValue()) {
+            // The events of the anchored node are folded into the JSON of the key
+            return false;
+        } else if (processingContext.isContext(KEY)) {
+            materialize();
+            parent = processingContext.pop();
+            // Same state as after the end of a mapping or sequence as value of the key
             processingContext.popContextEvent(1);
-            YAMLDocumentDescriptor doc = processingContext.pop();
-            fileDescriptor.getDocuments().add(doc);
+            addKey(processingContext.peek(), parent);
+        } else if (processingContext.isContext(SEQUENCE)) {
+            materialize();
+
+            if (compactItems != null) {
+                expandItems();
+            }
+
+            parent = processingContext.peek();
+            processingContext.nextItem();
+
+            if (start instanceof SequenceStartEvent) {
+                // A sequence in a sequence is written as a value containing the items
+                Node bucket = createItemValue(null);
+
+                if (!bucket.isStaged()) {
+                    stage(bucket);
+                }
+
+                addValue(parent, bucket);
+                parent = bucket;
+            }
+        } else {
+            return false;
+        }
+
+        // Recording the alias instead of its events keeps the recordings linear in the size of the document
+        sharedAliases.put(alias, anchoredNode);
+        record(alias);
+
+        for (Node key : anchoredNode.keys) {
+            addKey(parent, key);
         }
+        for (Node value : anchoredNode.values) {
+            addValue(parent, value);
+        }
+
+        complete();
+
+        return true;
     }
 
-    protected void handleDocumentStartEvent(Event event) {
-        YAMLDocumentDescriptor doc = currentScanner.getContext()
-                                                   .getStore()
-                                                   .create(YAMLDocumentDescriptor.class);
+    private void startDocument(Event event) {
+        // Anchors are only valid within the document defining them
+        anchoredNodes.clear();
+        sharedAliases.clear();
         processingContext.pushContextEvent(DOCUMENT_CTX);
-        processingContext.push(doc);
+        documentPhase = events.beginDocument();
+        keysBeforeDocument = statistics.getKeys();
+        valuesBeforeDocument = statistics.getValues();
+        statistics.document();
+        document = batch.createDocument(filter.root());
+        processingContext.push(document);
+    }
+
+    private void endDocument(Event event) {
+        processingContext.popContextEvent(1);
+
+        processingContext.pop();
+
+        if (hash != null && batch.deduplicate(document, hash.finish())) {
+            statistics.drop(statistics.getKeys() - keysBeforeDocument, statistics.getValues() - valuesBeforeDocument);
+        }
+
+        documentPhase.end(0, 1, statistics.getKeys() - keysBeforeDocument,
+                          statistics.getValues() - valuesBeforeDocument);
+        documentPhase = ScanEvents.Phase.NONE;
+        document = null;
     }
 
-    protected void handleMappingStartEvent(Event event) {
+    private void startMapping(Event event) {
         processingContext.pushContextEvent(MAPPING_CXT);
     }
 
-    protected void handleMappingEndEvent(Event event) {
-        if (processingContext.isContext(MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_CXT)) {
-            processingContext.popContextEvent(2);
+    private void endMapping(Event event) {
+        processingContext.popContextEvent(1);
+    }
 
-            YAMLKeyDescriptor currentKey = processingContext.pop();
-            YAMLKeyBucket parent = processingContext.peek();
+    private void endMappingAsValueOfKey(Event event) {
+        processingContext.popContextEvent(2);
 
-            parent.getKeys().add(currentKey);
-        } else if (processingContext.isContext(MAPPING_CXT)) {
-            processingContext.popContextEvent(1);
+        Node currentKey = processingContext.pop();
+        Node parent = processingContext.peek();
+
+        addKey(parent, currentKey);
+    }
 
-        } else if (processingContext.isContext(MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT)) {
-            processingContext.popContextEvent(4);
-            YAMLKeyDescriptor currentKey = processingContext.pop();
-            YAMLKeyDescriptor parentKeyOfThis= processingContext.pop();
-            YAMLKeyBucket parent = processingContext.peek();
+    private void endMappingAfterValueOfNestedKey(Event event) {
+        processingContext.popContextEvent(4);
+        Node currentKey = processingContext.pop();
+        Node parentKeyOfThis = processingContext.pop();
+        Node parent = processingContext.peek();
 
-            parentKeyOfThis.getKeys().add(currentKey);
-            parent.getKeys().add(parentKeyOfThis);
+        addKey(parentKeyOfThis, currentKey);
+        addKey(parent, parentKeyOfThis);
+    }
 
-        } else if (processingContext.isContext(MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT)) {
-            processingContext.popContextEvent(3);
+    private void endMappingAfterValueOfKey(Event event) {
+        processingContext.popContextEvent(3);
 
-            YAMLKeyDescriptor keyDescriptor = processingContext.pop();
+        Node key = processingContext.pop();
+        Node bucket = processingContext.peek();
 
-            YAMLKeyBucket bucket = processingContext.peek();
-            bucket.getKeys().add(keyDescriptor);
+        addKey(bucket, key);
+    }
 
-        } else {
-            unsupportedYAMLStructure(event);
+    private void startSequence(Event event) {
+        if (compactSequences && processingContext.isContext(KEY)) {
+            compactItems = new ArrayList<>();
+        }
+
+        processingContext.pushContextEvent(SEQUENCE_CXT);
+    }
+
+    private void startSequenceInSequence(Event event) {
+        processingContext.push(createItemValue(null));
+        processingContext.pushContextEvent(SEQUENCE_CXT);
+    }
+
+    private void endSequenceAsValueOfKey(Event event) {
+        processingContext.popContextEvent(2);
+        Node keyForSequence = processingContext.pop();
+        Node keyBucketForSequence = processingContext.peek();
+
+        if (compactItems != null) {
+            keyForSequence.setItems(compactItems);
+            compactItems = null;
         }
+
+        addKey(keyBucketForSequence, keyForSequence);
+    }
+
+    private void endSequenceInDocument(Event event) {
+        processingContext.popContextEvent(1);
+    }
+
+    private void endSequenceInSequence(Event event) {
+        processingContext.popContextEvent(1);
+        Node value = processingContext.pop();
+        Node bucket = processingContext.peek();
+
+        addValue(bucket, value);
     }
 
-    protected void handleScalarEvent(ScalarEvent event) {
-        if (processingContext.isContext(MAPPING_CXT)) {
-            YAMLKeyDescriptor key = currentScanner.getContext().getStore()
-                                                  .create(YAMLKeyDescriptor.class);
+    private void startKey(Event event) {
+        String rawName = ((ScalarEvent) event).getValue();
+        String fqn = processingContext.buildNextFQN(rawName);
+        String path = processingContext.buildNextPath(rawName);
+        String name = strings.intern(trimToEmpty(rawName));
+        Node key = createKey(name, trimToEmpty(fqn), trimToEmpty(path), processingContext.nextKeyPosition(),
+                             filter.match(processingContext.peek().getMatch(), name));
 
-            String name = event.getValue();
-            String fqn = processingContext.buildNextFQN(name);
+        if (foldDepth > 0 && processingContext.getKeyDepth() + 1 >= foldDepth) {
+            key.fold();
+        }
 
-            key.setName(trimToEmpty(name));
-            key.setFullQualifiedName(trimToEmpty(fqn));
+        if (fold != null) {
+            FQNFilter.Match foldMatch = fold.match(getParentFoldMatch(), name);
 
-            processingContext.push(key);
-            processingContext.pushContextEvent(MAPPING_KEY_CXT);
+            key.setFoldMatch(foldMatch);
 
-        } else if (processingContext.isContext(MAPPING_CXT, MAPPING_KEY_CXT)) {
-            YAMLValueDescriptor value = currentScanner.getContext().getStore()
-                                                      .create(YAMLValueDescriptor.class);
+            if (foldMatch.isIncluded()) {
+                key.fold();
+            }
+        }
 
-            String rawValue = event.getValue();
+        processingContext.push(key);
+        processingContext.pushContextEvent(MAPPING_KEY_CXT);
+    }
 
-            if (!isBlank(rawValue)) {
-                value.setValue(rawValue);
-                YAMLKeyDescriptor key = processingContext.peek();
-                key.getValues().add(value);
+    /**
+     * Returns the fold match of the innermost key on the stack, or the
+     * root match for a key on the top level of a document.
+     */
+    private FQNFilter.Match getParentFoldMatch() {
+        for (Node parent : processingContext.stack()) {
+            if (parent.isKey()) {
+                return parent.getFoldMatch();
             }
+        }
+
+        return fold.root();
+    }
+
+    private boolean isFoldedValue() {
+        return processingContext.isContext(KEY) && processingContext.peek().isFolded();
+    }
+
+    /**
+     * Adds the given event to the JSON of the folded key on top of the
+     * stack. As soon as its mapping or sequence is complete, the JSON is
+     * set on the key.
+     */
+    private void fold(Event event) {
+        if (folder == null) {
+            folder = new JSONFolder();
+        }
+
+        if (event instanceof ScalarEvent) {
+            // Folded keys and values are still limited by the budget
+            budget.node();
+        }
 
+        if (folder.add(event)) {
+            processingContext.peek().setJSON(folder.toJSON());
+            folder = null;
+            // Same state as after a scalar as value of the key
             processingContext.pushContextEvent(MAPPING_VALUE_CXT);
+        }
+    }
+
+    private void endKeyAndStartNextKey(Event event) {
+        processingContext.popContextEvent(2);
+        Node key = processingContext.pop();
+        Node bucket = processingContext.peek();
+
+        addKey(bucket, key);
+
+        startKey(event);
+    }
+
+    private void valueOfKey(Event event) {
+        String rawValue = ((ScalarEvent) event).getValue();
+
+        if (!isBlank(rawValue)) {
+            Node key = processingContext.peek();
+
+            addValue(key, createValue(strings.internValue(rawValue), null, 0));
+        }
+
+        processingContext.pushContextEvent(MAPPING_VALUE_CXT);
+    }
+
+    private void valueInBucket(Event event) {
+        String rawValue = ((ScalarEvent) event).getValue();
+        Node bucket = processingContext.peek();
+        String value = strings.internValue(trimToEmpty(rawValue));
+
+        if (compactItems != null) {
+            budget.node();
+            compactItems.add(value);
+            return;
+        }
+
+        addValue(bucket, processingContext.isInSequence() ? createItemValue(value) : createValue(value, null, 0));
+    }
 
-        } else if (processingContext.isContext(MAPPING_CXT, MAPPING_KEY_CXT, MAPPING_VALUE_CXT)) {
-            processingContext.popContextEvent(2);
-            YAMLKeyDescriptor key = processingContext.pop();
+    /**
+     * Checks the budget and updates the statistics of the file for the
+     * given event.
+     */
+    private void track(Event event) {
+        budget.event();
+
+        if (event instanceof CollectionStartEvent) {
+            budget.enterCollection();
+            statistics.enterCollection();
+        } else if (event instanceof CollectionEndEvent) {
+            budget.leaveCollection();
+            statistics.leaveCollection();
+        } else if (event instanceof ScalarEvent) {
+            budget.scalar(((ScalarEvent) event).getValue());
+        }
+    }
+
+    /**
+     * Numbers the keys of mappings and the items of sequences and tracks
+     * the path of the current item for the given event.
+     */
+    private void position(Event event) {
+        if (event instanceof NodeEvent && processingContext.isInSequence()) {
+            processingContext.nextItem();
+        }
+
+        if (event instanceof MappingStartEvent) {
+            processingContext.enterCollection(false);
+        } else if (event instanceof SequenceStartEvent) {
+            processingContext.enterCollection(true);
+        } else if (event instanceof CollectionEndEvent) {
+            processingContext.leaveCollection();
+        }
+    }
+
+    private Node createKey(String name, String fullQualifiedName, String path, int position,
+                           FQNFilter.Match match) {
+        budget.node();
+
+        Node key = batch.createKey(name, fullQualifiedName, path, position, match);
+
+        if (match.isIncluded()) {
+            materialize(key);
+        }
+
+        return key;
+    }
 
-            YAMLKeyBucket bucket = processingContext.peek();
-            bucket.getKeys().add(key);
+    /**
+     * Creates a value of the key or value on top of the stack, which is
+     * staged if the key or value is included.
+     */
+    private Node createValue(String value, String path, int position) {
+        budget.node();
 
-            YAMLKeyDescriptor nextKey = currentScanner.getContext().getStore()
-                                                      .create(YAMLKeyDescriptor.class);
+        return newValue(value, path, position);
+    }
+
+    private Node newValue(String value, String path, int position) {
+        FQNFilter.Match match = processingContext.peek().getMatch();
+        Node node = batch.createValue(value, path, position, match);
 
-            String name = event.getValue();
-            String fqn = processingContext.buildNextFQN(name);
+        if (match.isIncluded()) {
+            materialize(node);
+        }
 
-            nextKey.setName(trimToEmpty(name));
-            nextKey.setFullQualifiedName(trimToEmpty(fqn));
+        return node;
+    }
 
-            processingContext.push(nextKey);
-            processingContext.pushContextEvent(MAPPING_KEY_CXT);
+    /**
+     * Writes the collected scalars of the sequence assigned to the key on
+     * top of the stack as values, as the sequence contains a mapping or
+     * another sequence. The scalars have already been counted by the
+     * budget.
+     */
+    private void expandItems() {
+        List<String> items = compactItems;
+        Node key = processingContext.peek();
 
-        } else if (processingContext.isContext(SEQUENCE_CXT)) {
-            YAMLValueDescriptor value = currentScanner.getContext()
-                                                      .getStore()
-                                                      .create(YAMLValueDescriptor.class);
+        compactItems = null;
 
-            String rawValue = event.getValue();
+        for (int i = 0; i < items.size(); i++) {
+            addValue(key, newValue(items.get(i), processingContext.buildItemPath(i), i));
+        }
+    }
 
-            value.setValue(trimToEmpty(rawValue));
+    /**
+     * Creates a value for the current item of the innermost sequence.
+     */
+    private Node createItemValue(String value) {
+        return createValue(value, processingContext.buildItemPath(), processingContext.getItemPosition());
+    }
 
-            YAMLValueBucket bucket = processingContext.peek();
-            bucket.getValues().add(value);
-        } else if (processingContext.isContext(DOCUMENT_CTX)) {
-            YAMLValueDescriptor value = currentScanner.getContext()
-                                                      .getStore()
-                                                      .create(YAMLValueDescriptor.class);
+    /**
+     * Stages the given key or value and all keys and values on the stack
+     * which are not staged yet, so that the relations to it can be
+     * written.
+     */
+    private void materialize(Node node) {
+        materialize();
+        stage(node);
+    }
 
-            String rawValue = event.getValue();
+    private void materialize() {
+        for (Node parent : processingContext.stack()) {
+            if (parent.isStaged()) {
+                break;
+            }
 
-            value.setValue(trimToEmpty(rawValue));
+            stage(parent);
+        }
+    }
 
-            YAMLValueBucket bucket = processingContext.peek();
-            bucket.getValues().add(value);
+    private void stage(Node node) {
+        if (node.isKey()) {
+            statistics.key();
         } else {
-            unsupportedYAMLStructure(event);
+            statistics.value();
         }
-}
+
+        batch.stage(node);
+    }
+
+    private void addKey(Node parent, Node key) {
+        if (!key.isStaged()) {
+            return;
+        }
+
+        batch.addKey(parent, key);
+
+        for (AnchorRecording recording : recordings) {
+            if (recording.parent == parent) {
+                recording.keys.add(key);
+            }
+        }
+    }
+
+    private void addValue(Node parent, Node value) {
+        if (!value.isStaged()) {
+            return;
+        }
+
+        batch.addValue(parent, value);
+
+        for (AnchorRecording recording : recordings) {
+            if (recording.parent == parent) {
+                recording.values.add(value);
+            }
+        }
+    }
+
+    private void record(Event event) {
+        for (AnchorRecording recording : recordings) {
+            recording.events.add(event);
+
+            if (event instanceof CollectionStartEvent) {
+                recording.depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                recording.depth--;
+            }
+        }
+    }
+
+    /**
+     * Ends the recordings of all anchored nodes which have been read
+     * completely.
+     */
+    private void complete() {
+        for (int i = recordings.size() - 1; i >= 0; i--) {
+            AnchorRecording recording = recordings.get(i);
+
+            if (recording.depth == 0) {
+                anchoredNodes.put(recording.anchor, recording);
+                recordings.remove(i);
+            }
+        }
+    }
 
     private EventType toEventType(Event event) {
         EventType result = null;
@@ -297,6 +931,82 @@ class YAMLEmitter implements Emitable {
         SEQUENCE_CXT,
     }
 
+    /**
+     * Registers a transition for the given event type, taken if the top of
+     * the context stack matches the context chain. An empty chain matches
+     * any stack. If several chains match, the transition registered first
+     * is taken.
+     */
+    private static void on(EventType eventType, ParseContext[] chain, BiConsumer<YAMLEmitter, Event> action) {
+        REGISTERED.add(new Transition(eventType, chain, action));
+    }
+
+    /**
+     * Returns the state following the given state if the given parse
+     * context is pushed.
+     */
+    static int nextState(int state, ParseContext context) {
+        return NEXT_STATES[state][context.ordinal()];
+    }
+
+    private static boolean endsWith(List<ParseContext> stack, ParseContext[] chain) {
+        int offset = stack.size() - chain.length;
+
+        return offset >= 0 && stack.subList(offset, stack.size()).equals(Arrays.asList(chain));
+    }
+
+    /**
+     * Action taken for an event if the top of the context stack matches
+     * the context chain.
+     */
+    private static class Transition {
+        private final EventType eventType;
+        private final ParseContext[] chain;
+        private final BiConsumer<YAMLEmitter, Event> action;
+
+        Transition(EventType eventType, ParseContext[] chain, BiConsumer<YAMLEmitter, Event> action) {
+            this.eventType = eventType;
+            this.chain = chain;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Signals that the parser failed to parse the current document. It is
+     * emitted instead of the remaining events of the document.
+     */
+    static class DocumentFailure extends Event {
+        private final String reason;
+
+        DocumentFailure(String reason) {
+            super(null, null);
+            this.reason = reason;
+        }
+
+        @Override
+        public boolean is(ID id) {
+            return false;
+        }
+    }
+
+    /**
+     * Collects the events of an anchored node until the node is complete,
+     * together with the keys and values added for it to its parent, which
+     * is the node on top of the stack after the start of the anchored node.
+     */
+    private static class AnchorRecording {
+        private final String anchor;
+        private final List<Event> events = new ArrayList<>();
+        private final List<Node> keys = new ArrayList<>();
+        private final List<Node> values = new ArrayList<>();
+        private Node parent;
+        private int depth = 0;
+
+        AnchorRecording(String anchor) {
+            this.anchor = anchor;
+        }
+    }
+
     private static void unsupportedYAMLStructure(Event event) {
         String templ = "Found %s in an unexpected position in the YAML document. " +
                        "This might be an error in the YAML document, a bug in " +
@@ -1,9 +1,24 @@
 package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.buschmais.jqassistant.core.scanner.api.Scanner;
 import com.buschmais.jqassistant.core.scanner.api.ScannerContext;
@@ -12,28 +27,359 @@ import com.buschmais.jqassistant.core.scanner.api.Scope;
 import com.buschmais.jqassistant.core.store.api.Store;
 import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
 import com.buschmais.jqassistant.plugin.common.api.scanner.AbstractScannerPlugin;
+import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.AbstractFileResource;
 import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
+import com.buschmais.xo.api.Query;
+import com.buschmais.xo.api.Query.Result.CompositeRowObject;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.composer.Composer;
 import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.emitter.Emitable;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
 import org.yaml.snakeyaml.nodes.Node;
 import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
 import org.yaml.snakeyaml.representer.Representer;
 import org.yaml.snakeyaml.resolver.Resolver;
 import org.yaml.snakeyaml.serializer.Serializer;
 
+import static java.lang.String.format;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonMap;
+
 @Requires(FileDescriptor.class)
 public class YAMLFileScannerPlugin extends AbstractScannerPlugin<FileResource, YAMLFileDescriptor> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(YAMLFileScannerPlugin.class);
+
     /**
      * Supported file extensions for YAML file resources.
      */
     public final static String YAML_FILE_EXTENSION = ".yaml";
     public final static String YML_FILE_EXTENSION = ".yml";
 
+    /**
+     * Name of the property to control the single-pass scan mode. In this
+     * mode the event stream of the YAML parser is passed directly to the
+     * emitter instead of loading, representing and serializing each
+     * document before. Memory usage is bounded by the nesting depth of
+     * the documents and by the staging limit, not by their size. Unlike the
+     * load mode, which is the default, it writes duplicate keys as they
+     * are read and does not construct values for explicit tags.
+     */
+    public final static String PROPERTY_STREAMING = "yaml.file.streaming";
+
+    /**
+     * Name of the property to control the number of keys and values which
+     * are written to the store in bulk by a single query.
+     */
+    public final static String PROPERTY_BATCH_SIZE = "yaml.file.batchSize";
+
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Name of the property to control the number of keys and values of a
+     * file which are held in memory until the file has been read completely.
+     * A file with more keys and values is written in parts, which are
+     * removed again if the file cannot be scanned. If zero, all keys and
+     * values of a file are held in memory.
+     */
+    public final static String PROPERTY_STAGING_LIMIT = "yaml.file.stagingLimit";
+
+    public final static long DEFAULT_STAGING_LIMIT = 100_000;
+
+    /**
+     * Name of the property to control the size in bytes from which a local
+     * file is read through a file channel instead of a stream. Files in
+     * archives are always read as a stream. If zero, all files are read as
+     * a stream.
+     */
+    public final static String PROPERTY_CHANNEL_THRESHOLD = "yaml.file.channelThreshold";
+
+    public final static long DEFAULT_CHANNEL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Name of the property to control the number of names, full qualified
+     * names and short values of keys which are cached while scanning, so
+     * that equal strings of all files share a single instance. If zero, no
+     * strings are cached.
+     */
+    public final static String PROPERTY_STRING_CACHE_SIZE = "yaml.file.stringCacheSize";
+
+    public final static int DEFAULT_STRING_CACHE_SIZE = 8192;
+
+    /**
+     * Name of the property to control whether YAML files are parsed on a
+     * background thread. If set, each file is parsed on a single parser
+     * thread, while the scanning thread writes the already parsed documents
+     * of the same file to the store. This only overlaps parsing and writing
+     * of one file: the scanner passes the files one at a time, so they are
+     * still parsed one after the other. If not set, each file is parsed on
+     * the scanning thread.
+     */
+    public final static String PROPERTY_PARSER_THREAD = "yaml.file.parserThread";
+
+    /**
+     * Name of the property to control how aliases are written. If set, an
+     * alias used as value is written as relations to the keys and values of
+     * the anchored node instead of a copy of them, so that the size of the
+     * graph does not grow with the number of aliases.
+     */
+    public final static String PROPERTY_SHARE_ALIASES = "yaml.file.shareAliases";
+
+    /**
+     * Name of the property to control how sequences of scalars are written.
+     * If set, the items of a sequence assigned to a key which contains only
+     * scalars are written as array property of the key together with their
+     * number, instead of one value for each item.
+     */
+    public final static String PROPERTY_COMPACT_SEQUENCES = "yaml.file.compactSequences";
+
+    /**
+     * Name of the property with the comma separated patterns of the full
+     * qualified names of the keys which are written to the store. Keys
+     * containing an included key are written as well. If not set, all keys
+     * are written.
+     */
+    public final static String PROPERTY_INCLUDE = "yaml.file.include";
+
+    /**
+     * Name of the property with the comma separated patterns of the full
+     * qualified names of the keys which are not written to the store,
+     * even if they are included.
+     */
+    public final static String PROPERTY_EXCLUDE = "yaml.file.exclude";
+
+    /**
+     * Name of the property to control the depth of the keys whose mappings
+     * and sequences are folded. The mapping or sequence assigned to a key
+     * at this depth is written as JSON property of the key instead of keys
+     * and values, with the keys on the top level of a document at depth 1.
+     * If set to 0, which is the default, no keys are folded by their depth.
+     */
+    public final static String PROPERTY_FOLD_DEPTH = "yaml.file.foldDepth";
+
+    /**
+     * Name of the property with the comma separated patterns of the full
+     * qualified names of the keys whose mappings and sequences are written
+     * as JSON property of the key instead of keys and values.
+     */
+    public final static String PROPERTY_FOLD = "yaml.file.fold";
+
+    /**
+     * Name of the property to control if identical documents are written
+     * once. If set, each document gets the hash of its structure and its
+     * scalars, and a document with the same hash as a document already
+     * written for another file is added to the file instead of being
+     * written again.
+     */
+    public final static String PROPERTY_DEDUPLICATE_DOCUMENTS = "yaml.file.deduplicateDocuments";
+
+    /**
+     * Name of the property to enable the statistics of the scan. If set,
+     * the statistics of each file are stored as properties of the file and
+     * a summary of all files is logged at the end of the scan.
+     */
+    public final static String PROPERTY_STATISTICS = "yaml.file.statistics";
+
+    /**
+     * Name of the property to control the number of the slowest files
+     * listed by the summary of the scan.
+     */
+    public final static String PROPERTY_SLOWEST_FILES = "yaml.file.slowestFiles";
+
+    public final static int DEFAULT_SLOWEST_FILES = 10;
+
+    /*
+     * Names of the properties limiting the resources used to scan a single
+     * file. A file exceeding one of the limits is marked as invalid, the
+     * exceeded limit is stored as reason. A limit of zero disables the check.
+     */
+
+    /**
+     * Name of the property to limit the number of keys and values of a file.
+     */
+    public final static String PROPERTY_MAX_NODES = "yaml.file.maxNodes";
+
+    /**
+     * Name of the property to limit the nesting depth of mappings and sequences.
+     */
+    public final static String PROPERTY_MAX_DEPTH = "yaml.file.maxDepth";
+
+    public final static long DEFAULT_MAX_DEPTH = 1000;
+
+    /**
+     * Name of the property to limit the number of events replayed for
+     * aliases, which grows exponentially for nested aliases.
+     */
+    public final static String PROPERTY_MAX_ALIAS_EXPANSIONS = "yaml.file.maxAliasExpansions";
+
+    public final static long DEFAULT_MAX_ALIAS_EXPANSIONS = 100_000;
+
+    /**
+     * Name of the property to limit the number of characters of a scalar.
+     */
+    public final static String PROPERTY_MAX_SCALAR_LENGTH = "yaml.file.maxScalarLength";
+
+    /**
+     * Name of the property to limit the number of characters of a document.
+     * Unlike the length of a scalar, which is checked once the scalar has
+     * been read, it is checked while the document is read, so that it also
+     * bounds the memory used for a single huge scalar.
+     */
+    public final static String PROPERTY_MAX_DOCUMENT_LENGTH = "yaml.file.maxDocumentLength";
+
+    /**
+     * Name of the property to limit the scan time of a file in milliseconds.
+     */
+    public final static String PROPERTY_MAX_SCAN_TIME = "yaml.file.maxScanTime";
+
+    /*
+     * DumperOptions and the resolvers are only read after they have been
+     * created and are shared by all instances of the plugin.
+     */
+    private static final DumperOptions OPTIONS = new DumperOptions();
+    private static final Resolver RESOLVER = new Resolver();
+    private static final Resolver NON_RESOLVING_RESOLVER = new NonResolvingResolver();
+
+    private static final String FIND_CHILDREN =
+         "MATCH (parent)-[:CONTAINS_KEY|CONTAINS_VALUE]->(child) " +
+         "WHERE id(parent) IN $parents " +
+         "RETURN DISTINCT id(child) AS child";
+
+    private static final String FIND_SHARED_DOCUMENTS =
+         "MATCH (file)-[:CONTAINS_DOCUMENT]->(document)<-[:CONTAINS_DOCUMENT]-(other) " +
+         "WHERE id(file) = $file AND other <> file " +
+         "RETURN DISTINCT id(document) AS document";
+
+    private static final String REMOVE_NODES =
+         "MATCH (node) " +
+         "WHERE id(node) IN $nodes " +
+         "DETACH DELETE node";
+
+    private boolean streaming;
+    private int batchSize;
+    private long stagingLimit;
+    private long channelThreshold;
+    private StringCache strings;
+    private ScanSummary summary;
+    private ExecutorService parser;
+    private EventPipeline pipeline;
+    private boolean shareAliases;
+    private boolean compactSequences;
+    private FQNFilter filter;
+    private long foldDepth;
+    private FQNFilter fold;
+    private String hashSeed;
+    private String settings;
+    private long maxNodes;
+    private long maxDepth;
+    private long maxAliasExpansions;
+    private long maxScalarLength;
+    private long maxDocumentLength;
+    private long maxScanTime;
+
+    /*
+     * The SnakeYAML objects used to load documents are created once per
+     * plugin instead of for each file and each document. Constructor and
+     * Representer keep state while loading or representing a document, so
+     * they are only used by the scan of one file at a time and replaced if
+     * a document cannot be loaded.
+     */
+    private Constructor constructor = new TagOverridingConstructor();
+    private Representer representer = new Representer();
+
+    @Override
+    protected void configure() {
+        streaming = getBooleanProperty(PROPERTY_STREAMING, Boolean.FALSE);
+        batchSize = Integer.parseInt(getStringProperty(PROPERTY_BATCH_SIZE, Integer.toString(DEFAULT_BATCH_SIZE)));
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The value of " + PROPERTY_BATCH_SIZE + " must be positive, but is " +
+                                               batchSize);
+        }
+
+        // The parser thread of a previous configuration is not used anymore
+        shutdownParser();
+
+        if (getBooleanProperty(PROPERTY_PARSER_THREAD, Boolean.FALSE)) {
+            parser = createParserThread();
+            pipeline = new EventPipeline(parser);
+        }
+        shareAliases = getBooleanProperty(PROPERTY_SHARE_ALIASES, Boolean.FALSE);
+        compactSequences = getBooleanProperty(PROPERTY_COMPACT_SEQUENCES, Boolean.FALSE);
+        filter = FQNFilter.compile(getPatternsProperty(PROPERTY_INCLUDE), getPatternsProperty(PROPERTY_EXCLUDE));
+        foldDepth = getLimitProperty(PROPERTY_FOLD_DEPTH, 0);
+
+        List<String> foldPatterns = getPatternsProperty(PROPERTY_FOLD);
+
+        fold = foldPatterns.isEmpty() ? null : FQNFilter.compile(foldPatterns, emptyList());
+
+        boolean deduplicate = getBooleanProperty(PROPERTY_DEDUPLICATE_DOCUMENTS, Boolean.FALSE);
+
+        if (deduplicate) {
+            // Documents are only identical if they are written with the same settings
+            hashSeed = Arrays.asList(shareAliases, compactSequences, getPatternsProperty(PROPERTY_INCLUDE),
+                                     getPatternsProperty(PROPERTY_EXCLUDE), foldDepth, foldPatterns).toString();
+        } else {
+            hashSeed = null;
+        }
+
+        // A file is only unchanged if it is scanned again with the same settings
+        settings = toHex(md5Digest().digest(Arrays.asList(streaming, shareAliases, compactSequences,
+                                                          getPatternsProperty(PROPERTY_INCLUDE),
+                                                          getPatternsProperty(PROPERTY_EXCLUDE), foldDepth,
+                                                          foldPatterns, deduplicate)
+                                                .toString().getBytes(StandardCharsets.UTF_8)));
+        maxNodes = getLimitProperty(PROPERTY_MAX_NODES, 0);
+        maxDepth = getLimitProperty(PROPERTY_MAX_DEPTH, DEFAULT_MAX_DEPTH);
+        maxAliasExpansions = getLimitProperty(PROPERTY_MAX_ALIAS_EXPANSIONS, DEFAULT_MAX_ALIAS_EXPANSIONS);
+        maxScalarLength = getLimitProperty(PROPERTY_MAX_SCALAR_LENGTH, 0);
+        maxDocumentLength = getLimitProperty(PROPERTY_MAX_DOCUMENT_LENGTH, 0);
+        maxScanTime = getLimitProperty(PROPERTY_MAX_SCAN_TIME, 0);
+        stagingLimit = getLimitProperty(PROPERTY_STAGING_LIMIT, DEFAULT_STAGING_LIMIT);
+        channelThreshold = getLimitProperty(PROPERTY_CHANNEL_THRESHOLD, DEFAULT_CHANNEL_THRESHOLD);
+        strings = new StringCache((int) getLimitProperty(PROPERTY_STRING_CACHE_SIZE, DEFAULT_STRING_CACHE_SIZE));
+
+        if (getBooleanProperty(PROPERTY_STATISTICS, Boolean.FALSE)) {
+            summary = new ScanSummary((int) getLimitProperty(PROPERTY_SLOWEST_FILES, DEFAULT_SLOWEST_FILES));
+        } else {
+            summary = null;
+        }
+    }
+
+    private long getLimitProperty(String name, long defaultValue) {
+        long limit = Long.parseLong(getStringProperty(name, Long.toString(defaultValue)));
+
+        if (limit < 0) {
+            throw new IllegalArgumentException("The value of " + name + " must not be negative, but is " + limit);
+        }
+
+        return limit;
+    }
+
+    private List<String> getPatternsProperty(String name) {
+        List<String> patterns = new ArrayList<>();
+
+        for (String pattern : getStringProperty(name, "").split(",")) {
+            if (!pattern.trim().isEmpty()) {
+                patterns.add(pattern.trim());
+            }
+        }
+
+        return patterns;
+    }
+
     @Override
     public boolean accepts(FileResource file, String path, Scope scope) {
         String lowercasePath = path.toLowerCase();
@@ -45,41 +391,333 @@ public class YAMLFileScannerPlugin extends AbstractScannerPlugin<FileResource, Y
         ScannerContext context = scanner.getContext();
         Store store = context.getStore();
 
-        Yaml yaml = new Yaml(new TagOverridingConstructor(), new Representer(), new DumperOptions(),
-                             new NonResolvingResolver());
-        Representer representer = new Representer();
-        DumperOptions options = new DumperOptions();
-
         FileDescriptor fileDescriptor = context.getCurrentDescriptor();
         YAMLFileDescriptor yamlFileDescriptor = store.addDescriptorType(fileDescriptor, YAMLFileDescriptor.class);
+        String md5OfLastScan = settings.equals(yamlFileDescriptor.getSettings()) ? yamlFileDescriptor.getMd5() : null;
+        // Entries of archives can be read only once, so they are hashed while they are parsed
+        boolean local = !(item instanceof AbstractFileResource);
 
+        if (local && md5OfLastScan != null && md5OfLastScan.equals(md5Of(item))) {
+            // Neither the content nor the settings have changed, so the documents of the last scan are kept
+            return yamlFileDescriptor;
+        }
+
+        // The documents of the last scan are removed as soon as the file is known to have changed
+        List<YAMLDocumentDescriptor> documentsOfLastScan = new ArrayList<>(yamlFileDescriptor.getDocuments());
 
-        try (InputStream in = item.createStream()) {
-            Iterable<Object> docs = yaml.loadAll(in);
+        ScanBudget budget = new ScanBudget(maxNodes, maxDepth, maxAliasExpansions, maxScalarLength, maxScanTime);
+        ScanStatistics statistics = new ScanStatistics();
+        ScanEvents events = ScanEvents.of(path);
+        ScanEvents.Phase filePhase = events.beginFile();
+        YAMLEmitter emitter = new YAMLEmitter(yamlFileDescriptor, scanner, batchSize, stagingLimit, shareAliases,
+                                              compactSequences, budget, statistics, events, strings, filter,
+                                              foldDepth, fold, hashSeed == null ? null : new DocumentHash(hashSeed));
+        MessageDigest md5 = md5Digest();
 
-            for (Object doc : docs) {
-                Node node = representer.represent(doc);
-                YAMLEmitter emitter = new YAMLEmitter(yamlFileDescriptor, scanner);
-                Serializer serializer = new Serializer(emitter, new Resolver(), options, null);
+        try (Reader reader = openReader(item, md5, statistics)) {
+            DocumentReader documents = new DocumentReader(reader, maxDocumentLength);
+            EventPipeline.Producer producer = streaming ? sink -> parseEvents(documents, sink)
+                                                        : sink -> loadDocuments(documents, maxDepth, sink);
+            ScanEvents.Phase parsePhase = events.beginParse();
 
-                serializer.open();
-                serializer.serialize(node);
-                serializer.close();
+            if (pipeline != null) {
+                pipeline.run(producer, emitter);
+            } else {
+                producer.produce(emitter);
+            }
+
+            parsePhase.end(statistics.getBytes(), statistics.getDocuments(), statistics.getKeys(),
+                           statistics.getValues());
+            String md5OfScan = toHex(md5.digest());
+
+            if (!local && md5OfScan.equals(md5OfLastScan)) {
+                // Neither the content nor the settings have changed, so the documents of the last scan are kept
+                emitter.discard();
+                keepDocuments(yamlFileDescriptor, documentsOfLastScan);
+            } else {
+                removeDocuments(yamlFileDescriptor, documentsOfLastScan, store);
+                documentsOfLastScan.clear();
+                emitter.commit();
+                yamlFileDescriptor.setMd5(md5OfScan);
+                yamlFileDescriptor.setSettings(settings);
+
+                // In case a document of the file is not parseable set valid=false
+                // to help the user to identify nonparseable files
+                yamlFileDescriptor.setValid(emitter.getFailure() == null);
+                yamlFileDescriptor.setReason(emitter.getFailure());
             }
-            // In case the content of the file is not parseable set parsed=false
-            // to help the user to identify nonparseable files
-            yamlFileDescriptor.setValid(true);
         } catch (RuntimeException rt) {
             yamlFileDescriptor.setValid(false);
-            for (YAMLDocumentDescriptor documentDescriptor : yamlFileDescriptor.getDocuments()) {
-                yamlFileDescriptor.getDocuments().remove(documentDescriptor);
-            }
+            yamlFileDescriptor.setReason(rt.getMessage());
+            yamlFileDescriptor.setMd5(null);
+            yamlFileDescriptor.setSettings(null);
+            emitter.discard();
+            removeDocuments(yamlFileDescriptor, documentsOfLastScan, store);
+            keepDocuments(yamlFileDescriptor, emptyList());
             // @todo Logging is desired here Oliver B. Fischer, 23.08.2015
         }
 
+        statistics.finish();
+        filePhase.end(statistics.getBytes(), statistics.getDocuments(), statistics.getKeys(), statistics.getValues());
+
+        if (summary != null) {
+            summary.add(path, yamlFileDescriptor.isValid(), statistics);
+            storeStatistics(yamlFileDescriptor, statistics);
+        }
+
         return yamlFileDescriptor;
     }
 
+    @Override
+    public void destroy() {
+        if (summary != null) {
+            summary.log(LOGGER);
+        }
+
+        shutdownParser();
+    }
+
+    private void shutdownParser() {
+        if (parser != null) {
+            parser.shutdown();
+            parser = null;
+            pipeline = null;
+        }
+    }
+
+    private static void storeStatistics(YAMLFileDescriptor yamlFileDescriptor, ScanStatistics statistics) {
+        yamlFileDescriptor.setBytes(statistics.getBytes());
+        yamlFileDescriptor.setDocumentCount(statistics.getDocuments());
+        yamlFileDescriptor.setKeyCount(statistics.getKeys());
+        yamlFileDescriptor.setValueCount(statistics.getValues());
+        yamlFileDescriptor.setMaxDepth(statistics.getMaxDepth());
+        yamlFileDescriptor.setParseTime(TimeUnit.NANOSECONDS.toMillis(statistics.getParseTime()));
+        yamlFileDescriptor.setWriteTime(TimeUnit.NANOSECONDS.toMillis(statistics.getWriteTime()));
+    }
+
+    /**
+     * Opens the reader of the content of the given file, which adds the
+     * content to the MD5 hash and to the statistics of the file while it is
+     * read. A local file of at least the channel threshold in UTF-8 is read
+     * through a file channel. Resources of entries of archives are always
+     * read as a stream, as they would be extracted to a temporary file
+     * before.
+     */
+    private Reader openReader(FileResource item, MessageDigest md5, ScanStatistics statistics) throws IOException {
+        File file = channelThreshold > 0 && !(item instanceof AbstractFileResource) ? item.getFile() : null;
+
+        if (file != null) {
+            Reader reader = FileChannelReader.open(file, channelThreshold, md5, statistics);
+
+            if (reader != null) {
+                return reader;
+            }
+        }
+
+        return new UnicodeReader(new DigestInputStream(statistics.count(item.createStream()), md5));
+    }
+
+    /**
+     * Returns the MD5 hash of the content of the given file, in the same
+     * format as stored in {@link YAMLFileDescriptor#getMd5()}.
+     */
+    private static String md5Of(FileResource item) throws IOException {
+        MessageDigest md5 = md5Digest();
+
+        try (InputStream in = new DigestInputStream(item.createStream(), md5)) {
+            byte[] buffer = new byte[8192];
+
+            while (in.read(buffer) != -1) {
+                // Only the hash of the content is required
+            }
+        }
+
+        return toHex(md5.digest());
+    }
+
+    /**
+     * Creates the digest for the MD5 hash of a single file. The shared
+     * digest of {@code MD5DigestDelegate} is not reset if reading a file
+     * fails, so that the hash of the next file would be wrong.
+     */
+    static MessageDigest md5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported by the JVM.", e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        return String.format("%0" + digest.length * 2 + "X", new BigInteger(1, digest));
+    }
+
+    /**
+     * Removes all documents from the file except for the given ones, i.e.
+     * documents of other files which have been added by deduplication
+     * before the documents of the scan have been discarded.
+     */
+    private static void keepDocuments(YAMLFileDescriptor yamlFileDescriptor,
+                                      List<YAMLDocumentDescriptor> documentDescriptors) {
+        for (YAMLDocumentDescriptor documentDescriptor : new ArrayList<>(yamlFileDescriptor.getDocuments())) {
+            if (!documentDescriptors.contains(documentDescriptor)) {
+                yamlFileDescriptor.getDocuments().remove(documentDescriptor);
+            }
+        }
+    }
+
+    /**
+     * Removes the given documents of a file scanned before, including all
+     * keys and values of these documents. Documents also contained in other
+     * files are only removed from the file.
+     *
+     * <p>The keys and values are collected level by level, as a variable
+     * length path would follow each path to a key or value shared by
+     * several aliases separately.</p>
+     */
+    private static void removeDocuments(YAMLFileDescriptor yamlFileDescriptor,
+                                        List<YAMLDocumentDescriptor> documentDescriptors, Store store) {
+        if (documentDescriptors.isEmpty()) {
+            return;
+        }
+
+        Set<Long> nodes = new HashSet<>();
+        List<Long> level = new ArrayList<>();
+
+        Set<Long> shared = new HashSet<>();
+
+        try (Query.Result<CompositeRowObject> documents =
+                  store.executeQuery(FIND_SHARED_DOCUMENTS, singletonMap("file", yamlFileDescriptor.getId()))) {
+            for (CompositeRowObject row : documents) {
+                shared.add(row.get("document", Number.class).longValue());
+            }
+        }
+
+        for (YAMLDocumentDescriptor documentDescriptor : documentDescriptors) {
+            if (shared.contains(documentDescriptor.getId())) {
+                yamlFileDescriptor.getDocuments().remove(documentDescriptor);
+            } else {
+                level.add(documentDescriptor.getId());
+            }
+        }
+
+        while (!level.isEmpty()) {
+            nodes.addAll(level);
+
+            List<Long> nextLevel = new ArrayList<>();
+
+            try (Query.Result<CompositeRowObject> children = store.executeQuery(FIND_CHILDREN,
+                                                                                singletonMap("parents", level))) {
+                for (CompositeRowObject row : children) {
+                    Long child = row.get("child", Number.class).longValue();
+
+                    if (!nodes.contains(child)) {
+                        nextLevel.add(child);
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        store.executeQuery(REMOVE_NODES, singletonMap("nodes", new ArrayList<>(nodes))).close();
+    }
+
+    /**
+     * Passes the events of the YAML parser directly to the emitter, so that
+     * each document is parsed exactly once. The reader is consumed
+     * incrementally while the events are pulled from the parser. Only the
+     * parser itself is created for each document, as neither a constructor
+     * nor a resolver is needed to pass the events.
+     */
+    private static void parseEvents(DocumentReader documents, Emitable emitter) throws IOException {
+        while (documents.nextDocument()) {
+            try {
+                Parser parser = new ParserImpl(new StreamReader(documents));
+
+                while (parser.peekEvent() != null) {
+                    emitter.emit(parser.getEvent());
+                }
+            } catch (FileScanException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                emitter.emit(failure(documents, e));
+            }
+        }
+    }
+
+    /**
+     * Loads all documents, represents them as node trees and serializes these
+     * trees to the emitter. Each document is held completely in memory. As
+     * composing, constructing and representing a document recurses for each
+     * level of its mappings and sequences, the nesting depth is limited
+     * while the document is parsed, before a deeply nested document could
+     * exhaust the stack.
+     */
+    private void loadDocuments(DocumentReader documents, long maxDepth, Emitable emitter) throws IOException {
+        while (documents.nextDocument()) {
+            boolean loaded = false;
+
+            try {
+                Parser parser = new DepthLimitingParser(new ParserImpl(new StreamReader(documents)), maxDepth);
+
+                constructor.setComposer(new Composer(parser, NON_RESOLVING_RESOLVER));
+
+                while (constructor.checkData()) {
+                    Node node = representer.represent(constructor.getData());
+                    Serializer serializer = new Serializer(emitter, RESOLVER, OPTIONS, null);
+
+                    serializer.open();
+                    serializer.serialize(node);
+                    serializer.close();
+                }
+
+                loaded = true;
+            } catch (FileScanException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                emitter.emit(failure(documents, e));
+            } finally {
+                if (!loaded) {
+                    // Both keep the objects of the failed document, which must not leak into the next one
+                    constructor = new TagOverridingConstructor();
+                    representer = new Representer();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the failure of the current document. The positions in the
+     * message of the parser are counted from the start of the document, so
+     * the line of the file the document starts with is added.
+     */
+    private static YAMLEmitter.DocumentFailure failure(DocumentReader documents, RuntimeException e) {
+        return new YAMLEmitter.DocumentFailure(format("The document starting at line %d of the file cannot be " +
+                                                      "parsed: %s", documents.getFirstLine(), e.getMessage()));
+    }
+
+    /**
+     * Creates the executor of the daemon thread for parsing. The thread is
+     * terminated if it is idle, and the executor is shut down when the
+     * plugin is configured again or destroyed.
+     */
+    private static ExecutorService createParserThread() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "yaml-parser-" + threadNumber.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
     /**
      * Non-resolving resolver to avoid automatic type conversion provided by
      * the used SnakeYAML libary.
@@ -94,7 +732,44 @@ public class YAMLFileScannerPlugin extends AbstractScannerPlugin<FileResource, Y
     }
 
 
-    class TagOverridingConstructor extends Constructor {
+    /**
+     * Parser which fails the scan of the file as soon as the mappings and
+     * sequences of a document are nested deeper than the given limit.
+     */
+    private static class DepthLimitingParser implements Parser {
+        private final Parser parser;
+        private final ScanBudget budget;
+
+        DepthLimitingParser(Parser parser, long maxDepth) {
+            this.parser = parser;
+            this.budget = new ScanBudget(0, maxDepth, 0, 0, 0);
+        }
+
+        @Override
+        public boolean checkEvent(Event.ID choice) {
+            return parser.checkEvent(choice);
+        }
+
+        @Override
+        public Event peekEvent() {
+            return parser.peekEvent();
+        }
+
+        @Override
+        public Event getEvent() {
+            Event event = parser.getEvent();
+
+            if (event instanceof CollectionStartEvent) {
+                budget.enterCollection();
+            } else if (event instanceof CollectionEndEvent) {
+                budget.leaveCollection();
+            }
+
+            return event;
+        }
+    }
+
+    private static class TagOverridingConstructor extends Constructor {
         private List<Tag> SUPPORTED_TAGS =
              Arrays.asList(Tag.YAML, Tag.MERGE,
                            Tag.SET, Tag.PAIRS, Tag.OMAP,
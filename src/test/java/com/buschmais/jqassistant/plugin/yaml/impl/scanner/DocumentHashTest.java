@@ -0,0 +1,67 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+class DocumentHashTest {
+
+    @Test
+    void hashDoesNotDependOnFormattingCommentsAndQuoting() {
+        String block = hash("seed", "# Ports\nname: web\nports:\n  - 80\n  - 443\n");
+        String flow = hash("seed", "{name: \"web\", ports: [80, '443']}\n");
+
+        assertThat(flow, equalTo(block));
+    }
+
+    @Test
+    void hashDependsOnStructureScalarsAndAnchors() {
+        String mapping = hash("seed", "a: [b, c]\n");
+
+        assertThat(hash("seed", "a: [b, d]\n"), not(equalTo(mapping)));
+        assertThat(hash("seed", "a: [[b, c]]\n"), not(equalTo(mapping)));
+        assertThat(hash("seed", "a: [bc]\n"), not(equalTo(mapping)));
+        assertThat(hash("seed", "a: &x [b, c]\n"), not(equalTo(mapping)));
+    }
+
+    @Test
+    void hashDependsOnTheSeed() {
+        assertThat(hash("other", "a: b\n"), not(equalTo(hash("seed", "a: b\n"))));
+    }
+
+    @Test
+    void hashOfAScalarLongerThanTheBufferDependsOnAllCharacters() {
+        StringBuilder value = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            value.append("abc");
+        }
+
+        assertThat(hash("seed", "a: " + value + "d\n"), not(equalTo(hash("seed", "a: " + value + "e\n"))));
+    }
+
+    /**
+     * Computes the hash of the first document of the given YAML.
+     */
+    private static String hash(String seed, String yaml) {
+        Parser parser = new ParserImpl(new StreamReader(new StringReader(yaml)));
+        DocumentHash hash = new DocumentHash(seed);
+        Event event;
+
+        do {
+            event = parser.getEvent();
+            hash.add(event);
+        } while (!(event instanceof DocumentEndEvent));
+
+        return hash.finish();
+    }
+}
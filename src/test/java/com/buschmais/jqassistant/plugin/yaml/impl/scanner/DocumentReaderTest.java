@@ -0,0 +1,171 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DocumentReaderTest {
+
+    @Test
+    void streamIsSplitBeforeEachDocumentStartMarker() throws IOException {
+        assertThat(documents("a: b\n---\nc: d\n--- e\n---"), contains("a: b\n", "---\nc: d\n", "--- e\n", "---"));
+    }
+
+    @Test
+    void streamIsSplitAfterEachDocumentEndMarker() throws IOException {
+        assertThat(documents("a: b\n...\nc: d\n... # end\n"), contains("a: b\n...\n", "c: d\n... # end\n"));
+    }
+
+    @Test
+    void commentsAndDirectivesBelongToTheFollowingDocument() throws IOException {
+        assertThat(documents("# first\n%YAML 1.1\n\n---\na: b\n...\n%YAML 1.1\n---\nc: d\n"),
+                   contains("# first\n%YAML 1.1\n\n---\na: b\n...\n", "%YAML 1.1\n---\nc: d\n"));
+    }
+
+    @Test
+    void dashesWhichAreNoMarkerDoNotSplitTheStream() throws IOException {
+        assertThat(documents("a: ---\n----\n ---\n-- -\n"), contains("a: ---\n----\n ---\n-- -\n"));
+    }
+
+    @Test
+    void markersEndBlockScalarsAndPlainScalarsAsForTheParser() throws IOException {
+        String[] contents = {
+            "a: |\n  x\n---\nb: c\n",
+            "--- >-\n  x\n\n  ---\n---\n  y\n",
+            "- |2\n   x\n...\n---\n- y\n",
+            "a: x\n  y\n---\nz\n",
+            "--- x\ny\n---\nz\n"
+        };
+
+        for (String content : contents) {
+            assertThat(content, documents(content), hasSize(parsedDocuments(content)));
+        }
+
+        assertThat(documents("a: |\n  x\n---\nb: c\n"), contains("a: |\n  x\n", "---\nb: c\n"));
+    }
+
+    @Test
+    void markersWithinQuotedScalarsSplitTheStream() throws IOException {
+        assertThat(documents("a: \"unterminated\n---\nb: 2\n---\nc: 3\n"),
+                   contains("a: \"unterminated\n", "---\nb: 2\n", "---\nc: 3\n"));
+        assertThat(documents("- 'it''s\n...\nb: 2\n"), contains("- 'it''s\n...\n", "b: 2\n"));
+    }
+
+    @Test
+    void markersAreFoundForEachSizeOfTheBufferOfTheCaller() throws IOException {
+        String content = "a: b\n---\nc: d\n...\ne: f\n";
+
+        for (int bufferSize = 1; bufferSize <= content.length(); bufferSize++) {
+            assertThat("Buffer size " + bufferSize, documents(content, bufferSize),
+                       contains("a: b\n", "---\nc: d\n...\n", "e: f\n"));
+        }
+    }
+
+    @Test
+    void nextDocumentSkipsTheRestOfTheCurrentDocument() throws IOException {
+        DocumentReader reader = new DocumentReader(new StringReader("a: b\nc: d\n---\ne: f\n"));
+
+        assertThat(reader.nextDocument(), equalTo(true));
+        assertThat((char) reader.read(), equalTo('a'));
+        assertThat(reader.nextDocument(), equalTo(true));
+        assertThat(reader.getFirstLine(), equalTo(3));
+        assertThat(read(reader, 16), equalTo("---\ne: f\n"));
+        assertThat(reader.nextDocument(), equalTo(false));
+    }
+
+    @Test
+    void readingADocumentLongerThanTheLimitFails() throws IOException {
+        // The stream does not end, so the reader must stop at the limit
+        DocumentReader reader = new DocumentReader(new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                Arrays.fill(buffer, offset, offset + length, 'x');
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 100_000);
+
+        assertThat(reader.nextDocument(), equalTo(true));
+
+        ScanBudget.ExceededException thrown = assertThrows(ScanBudget.ExceededException.class,
+                                                           () -> read(reader, 1024));
+
+        assertThat(thrown.getMessage(), equalTo("The document starting at line 1 is longer than 100000 characters."));
+    }
+
+    @Test
+    void limitAppliesToEachDocument() throws IOException {
+        DocumentReader reader = new DocumentReader(new StringReader("a: b\nc: d\n---\ne: f\n"), 10);
+
+        assertThat(reader.nextDocument(), equalTo(true));
+        assertThat(read(reader, 4), equalTo("a: b\nc: d\n"));
+        assertThat(reader.nextDocument(), equalTo(true));
+        assertThat(read(reader, 4), equalTo("---\ne: f\n"));
+        assertThat(reader.nextDocument(), equalTo(false));
+    }
+
+    @Test
+    void skippedRestOfADocumentIsNotLimited() throws IOException {
+        DocumentReader reader = new DocumentReader(new StringReader("a: bbbbbbbbbbbbbbbbbbbb\n---\nc: d\n"), 10);
+
+        assertThat(reader.nextDocument(), equalTo(true));
+        assertThat((char) reader.read(), equalTo('a'));
+        assertThat(reader.nextDocument(), equalTo(true));
+        assertThat(read(reader, 4), equalTo("---\nc: d\n"));
+    }
+
+    @Test
+    void emptyStreamHasOneEmptyDocument() throws IOException {
+        assertThat(documents(""), contains(""));
+    }
+
+    private static int parsedDocuments(String content) {
+        return (int) StreamSupport.stream(new Yaml().parse(new StringReader(content)).spliterator(), false)
+                            .filter(event -> event instanceof DocumentStartEvent)
+                            .count();
+    }
+
+    private static List<String> documents(String content) throws IOException {
+        return documents(content, 1024);
+    }
+
+    private static List<String> documents(String content, int bufferSize) throws IOException {
+        DocumentReader reader = new DocumentReader(new StringReader(content));
+        List<String> documents = new ArrayList<>();
+
+        while (reader.nextDocument()) {
+            documents.add(read(reader, bufferSize));
+        }
+
+        return documents;
+    }
+
+    private static String read(Reader reader, int bufferSize) throws IOException {
+        StringBuilder document = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+            document.append(buffer, 0, read);
+        }
+
+        return document.toString();
+    }
+}
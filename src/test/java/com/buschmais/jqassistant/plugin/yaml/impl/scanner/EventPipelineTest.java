@@ -0,0 +1,94 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventPipelineTest {
+
+    private ExecutorService executor;
+    private EventPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        pipeline = new EventPipeline(executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void allEventsArePassedInTheOrderOfTheParser() throws Exception {
+        List<Event> produced = new ArrayList<>();
+        List<Event> emitted = new ArrayList<>();
+
+        for (int i = 0; i < EventPipeline.CHUNK_SIZE * EventPipeline.CAPACITY * 3 + 1; i++) {
+            produced.add(new StreamStartEvent(null, null));
+        }
+
+        pipeline.run(sink -> {
+            for (Event event : produced) {
+                sink.emit(event);
+            }
+        }, emitted::add);
+
+        assertThat(emitted.size(), equalTo(produced.size()));
+
+        for (int i = 0; i < produced.size(); i++) {
+            assertThat(emitted.get(i), sameInstance(produced.get(i)));
+        }
+    }
+
+    @Test
+    void failureOfTheParserIsRethrownAfterTheEventsParsedBefore() {
+        List<Event> emitted = new ArrayList<>();
+        YAMLException failure = new YAMLException("Broken");
+
+        YAMLException thrown = assertThrows(YAMLException.class, () -> pipeline.run(sink -> {
+            sink.emit(new StreamStartEvent(null, null));
+            sink.emit(new StreamStartEvent(null, null));
+            throw failure;
+        }, emitted::add));
+
+        assertThat(thrown, sameInstance(failure));
+        assertThat(emitted.size(), equalTo(2));
+    }
+
+    @Test
+    void failureOfTheEmitterStopsTheParserBeforeReturning() {
+        AtomicBoolean parserFinished = new AtomicBoolean(false);
+        IllegalStateException failure = new IllegalStateException("Broken");
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> pipeline.run(sink -> {
+            try {
+                while (true) {
+                    sink.emit(new StreamStartEvent(null, null));
+                }
+            } finally {
+                parserFinished.set(true);
+            }
+        }, event -> {
+            throw failure;
+        }));
+
+        assertThat(thrown, sameInstance(failure));
+        assertThat(parserFinished.get(), equalTo(true));
+    }
+}
@@ -0,0 +1,102 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FQNFilterTest {
+
+    @Test
+    void allKeysAreIncludedWithoutPatterns() {
+        FQNFilter filter = FQNFilter.compile(emptyList(), emptyList());
+        FQNFilter.Match match = filter.match(filter.root(), "metadata");
+
+        assertThat(filter, sameInstance(FQNFilter.ALL));
+        assertThat(match.isIncluded(), equalTo(true));
+        assertThat(filter.match(match, "name"), sameInstance(match));
+    }
+
+    @Test
+    void keysOnThePathToAnIncludedKeyAreNeitherIncludedNorSkipped() {
+        FQNFilter filter = FQNFilter.compile(singletonList("spec.template"), emptyList());
+        FQNFilter.Match spec = filter.match(filter.root(), "spec");
+
+        assertThat(spec.isIncluded(), equalTo(false));
+        assertThat(spec.isSkipped(), equalTo(false));
+        assertThat(filter.match(spec, "template").isIncluded(), equalTo(true));
+        assertThat(filter.match(spec, "replicas").isSkipped(), equalTo(true));
+        assertThat(filter.match(filter.root(), "metadata").isSkipped(), equalTo(true));
+    }
+
+    @Test
+    void keysBelowAnIncludedKeyAreIncluded() {
+        FQNFilter filter = FQNFilter.compile(singletonList("spec"), emptyList());
+        FQNFilter.Match spec = filter.match(filter.root(), "spec");
+
+        assertThat(filter.match(filter.match(spec, "template"), "metadata").isIncluded(), equalTo(true));
+    }
+
+    @Test
+    void anyNumberOfKeysMatchesTwoAsterisks() {
+        FQNFilter filter = FQNFilter.compile(singletonList("**.image"), emptyList());
+
+        assertThat(match(filter, "image").isIncluded(), equalTo(true));
+        assertThat(match(filter, "spec", "containers", "image").isIncluded(), equalTo(true));
+        assertThat(match(filter, "spec", "containers", "name").isIncluded(), equalTo(false));
+        assertThat(match(filter, "spec", "containers", "name").isSkipped(), equalTo(false));
+    }
+
+    @Test
+    void asteriskMatchesASingleKeyOrAPartOfItsName() {
+        FQNFilter filter = FQNFilter.compile(asList("*.name", "data.app-*"), emptyList());
+
+        assertThat(match(filter, "metadata", "name").isIncluded(), equalTo(true));
+        assertThat(match(filter, "name").isIncluded(), equalTo(false));
+        assertThat(match(filter, "spec", "template", "name").isSkipped(), equalTo(true));
+        assertThat(match(filter, "data", "app-config").isIncluded(), equalTo(true));
+        assertThat(match(filter, "data", "db-config").isSkipped(), equalTo(true));
+    }
+
+    @Test
+    void excludedKeysAreSkippedEvenIfTheyAreIncluded() {
+        FQNFilter filter = FQNFilter.compile(singletonList("spec"), singletonList("**.env"));
+        FQNFilter.Match containers = match(filter, "spec", "containers");
+
+        assertThat(containers.isIncluded(), equalTo(true));
+        assertThat(filter.match(containers, "env").isSkipped(), equalTo(true));
+        assertThat(filter.match(filter.match(containers, "env"), "name").isSkipped(), equalTo(true));
+    }
+
+    @Test
+    void allKeysWhichAreNotExcludedAreIncludedWithoutIncludePatterns() {
+        FQNFilter filter = FQNFilter.compile(emptyList(), singletonList("metadata.annotations"));
+
+        assertThat(match(filter, "metadata", "name").isIncluded(), equalTo(true));
+        assertThat(match(filter, "metadata", "annotations").isSkipped(), equalTo(true));
+    }
+
+    @Test
+    void patternsWithAnEmptyNameAreRejected() {
+        List<String> includes = singletonList("spec..image");
+
+        assertThrows(IllegalArgumentException.class, () -> FQNFilter.compile(includes, emptyList()));
+    }
+
+    private static FQNFilter.Match match(FQNFilter filter, String... names) {
+        FQNFilter.Match match = filter.root();
+
+        for (String name : names) {
+            match = filter.match(match, name);
+        }
+
+        return match;
+    }
+}
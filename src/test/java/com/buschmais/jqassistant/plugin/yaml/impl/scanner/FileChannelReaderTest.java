@@ -0,0 +1,125 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileChannelReaderTest {
+
+    private static final String CONTENT = "a: b\nc: äöü\nd: € 😀😀 e\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void contentIsDecodedForEachSizeOfTheChunkAndTheBuffer() throws Exception {
+        byte[] bytes = CONTENT.getBytes(UTF_8);
+        Path file = write(bytes);
+
+        for (int chunkSize = 4; chunkSize <= bytes.length + 1; chunkSize++) {
+            for (int bufferSize : new int[] { 1, 2, 3, 7, 1024 }) {
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+                ScanStatistics statistics = new ScanStatistics();
+                String read = read(file, chunkSize, bufferSize, md5, statistics);
+
+                assertThat("Chunk size " + chunkSize + ", buffer size " + bufferSize, read, equalTo(CONTENT));
+                assertThat(md5.digest(), equalTo(MessageDigest.getInstance("MD5").digest(bytes)));
+                assertThat(statistics.getBytes(), equalTo((long) bytes.length));
+            }
+        }
+    }
+
+    @Test
+    void byteOrderMarkOfUtf8IsSkippedButHashed() throws Exception {
+        byte[] bytes = ("﻿" + CONTENT).getBytes(UTF_8);
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+        String read = read(write(bytes), FileChannelReader.CHUNK_SIZE, 1024, md5, new ScanStatistics());
+
+        assertThat(read, equalTo(CONTENT));
+        assertThat(md5.digest(), equalTo(MessageDigest.getInstance("MD5").digest(bytes)));
+    }
+
+    @Test
+    void filesInUtf16AndSmallFilesAreLeftToAStream() throws Exception {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+        assertThat(FileChannelReader.open(write(CONTENT.getBytes(UTF_16)).toFile(), 1, md5, new ScanStatistics()),
+                   nullValue());
+        assertThat(FileChannelReader.open(write(CONTENT.getBytes(UTF_8)).toFile(), 1000, md5, new ScanStatistics()),
+                   nullValue());
+
+        // The stream adds the whole content to the hash, so nothing must be added before
+        assertThat(md5.digest(), equalTo(md5().digest()));
+
+        try (FileChannelReader reader = FileChannelReader.open(write(CONTENT.getBytes(UTF_8)).toFile(), 1, md5(),
+                                                               new ScanStatistics())) {
+            assertThat(reader, notNullValue());
+        }
+    }
+
+    @Test
+    void malformedContentIsReported() throws Exception {
+        Path file = write(new byte[] { 'a', ':', ' ', (byte) 0xC3, 'b' });
+
+        assertThrows(MalformedInputException.class, () -> read(file, 4, 1024, md5(), new ScanStatistics()));
+    }
+
+    @Test
+    void characterTruncatedByTheEndOfTheFileIsReported() throws Exception {
+        Path file = write(new byte[] { 'a', ':', ' ', (byte) 0xE2, (byte) 0x82 });
+
+        assertThrows(MalformedInputException.class, () -> read(file, 4, 1024, md5(), new ScanStatistics()));
+    }
+
+    @Test
+    void closedReaderCannotBeRead() throws Exception {
+        FileChannelReader reader = FileChannelReader.open(write(CONTENT.getBytes(UTF_8)).toFile(), 1, md5(),
+                                                          new ScanStatistics());
+
+        assertThat((char) reader.read(), equalTo('a'));
+
+        reader.close();
+        reader.close();
+
+        assertThrows(IOException.class, reader::read);
+    }
+
+    private static MessageDigest md5() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("MD5");
+    }
+
+    private Path write(byte[] bytes) throws IOException {
+        return Files.write(Files.createTempFile(directory, "channel", ".yaml"), bytes);
+    }
+
+    private static String read(Path file, int chunkSize, int bufferSize, MessageDigest md5,
+                               ScanStatistics statistics) throws IOException {
+        StringBuilder content = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+
+        try (FileChannelReader reader = FileChannelReader.open(file.toFile(), 1, chunkSize, md5, statistics)) {
+            int read;
+
+            while ((read = reader.read(buffer, 0, bufferSize)) != -1) {
+                content.append(buffer, 0, read);
+            }
+        }
+
+        return content.toString();
+    }
+}
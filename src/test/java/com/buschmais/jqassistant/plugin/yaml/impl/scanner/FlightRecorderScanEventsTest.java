@@ -0,0 +1,65 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.sameInstance;
+
+class FlightRecorderScanEventsTest {
+
+    @Test
+    void phasesAreRecordedWithTheirPathAndCounts(@TempDir Path directory) throws Exception {
+        Path dump = directory.resolve("scan.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("com.buschmais.jqassistant.plugin.yaml.FileScan");
+            recording.enable("com.buschmais.jqassistant.plugin.yaml.Write");
+            recording.start();
+
+            ScanEvents events = ScanEvents.of("/a.yaml");
+            ScanEvents.Phase file = events.beginFile();
+
+            events.beginWrite().end(0, 1, 2, 3);
+            file.end(100, 1, 2, 3);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump);
+
+        assertThat(recorded, hasSize(2));
+
+        RecordedEvent file = event(recorded, "com.buschmais.jqassistant.plugin.yaml.FileScan");
+        RecordedEvent write = event(recorded, "com.buschmais.jqassistant.plugin.yaml.Write");
+
+        assertThat(file.getString("path"), equalTo("/a.yaml"));
+        assertThat(file.getLong("bytes"), equalTo(100L));
+        assertThat(write.getString("path"), equalTo("/a.yaml"));
+        assertThat(write.getLong("documents"), equalTo(1L));
+        assertThat(write.getLong("keys"), equalTo(2L));
+        assertThat(write.getLong("values"), equalTo(3L));
+    }
+
+    @Test
+    void phasesAreNotRecordedWithoutARecording() {
+        ScanEvents events = ScanEvents.of("/a.yaml");
+
+        assertThat(events.beginDocument(), sameInstance(ScanEvents.Phase.NONE));
+    }
+
+    private static RecordedEvent event(List<RecordedEvent> recorded, String name) {
+        return recorded.stream()
+                       .filter(event -> event.getEventType().getName().equals(name))
+                       .findFirst()
+                       .orElseThrow(() -> new AssertionError("No event " + name));
+    }
+}
@@ -0,0 +1,153 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.buschmais.jqassistant.plugin.common.api.model.TarArchiveDescriptor;
+import com.buschmais.jqassistant.plugin.common.test.AbstractPluginIT;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLKeyDescriptor;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.Finders.findKeyByName;
+import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.util.StringValueMatcher.hasValue;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+class HelmChartScannerPluginIT extends AbstractPluginIT {
+
+    @BeforeEach
+    void startTransaction() {
+        store.beginTransaction();
+    }
+
+    @AfterEach
+    void commitTransaction() {
+        store.commitTransaction();
+    }
+
+    @Test
+    void yamlFilesOfAChartAreScannedWithTheirPathInTheArchive(@TempDir Path directory) throws IOException {
+        File chart = directory.resolve("nginx-1.2.3.tgz").toFile();
+
+        try (TarArchiveOutputStream archive =
+                  new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(chart.toPath())))) {
+            add(archive, "nginx/Chart.yaml", "apiVersion: v2\nname: nginx\nversion: 1.2.3\n");
+            add(archive, "nginx/values.yaml", "replicaCount: 2\nimage:\n  repository: nginx\n");
+            add(archive, "nginx/templates/service.yml", "kind: Service\n---\nkind: Deployment\n");
+            add(archive, "nginx/README.md", "# nginx\n");
+        }
+
+        TarArchiveDescriptor archive = getScanner().scan(chart, chart.getAbsolutePath(), null);
+
+        assertThat(archive, notNullValue());
+
+        List<String> fileNames = query("MATCH (f:YAML:File) RETURN f.fileName AS fileName").getColumn("fileName");
+
+        assertThat(fileNames, containsInAnyOrder("/nginx/Chart.yaml", "/nginx/values.yaml",
+                                                 "/nginx/templates/service.yml"));
+
+        List<YAMLFileDescriptor> values =
+             query("MATCH (:Tar:Archive)-[:CONTAINS]->(f:YAML:File {fileName: '/nginx/values.yaml'}) RETURN f")
+                  .getColumn("f");
+
+        assertThat(values, hasSize(1));
+        assertThat(values.get(0).isValid(), is(true));
+
+        YAMLDocumentDescriptor document = values.get(0).getDocuments().get(0);
+        YAMLKeyDescriptor image = findKeyByName(document.getKeys(), "image");
+
+        assertThat(findKeyByName(image.getKeys(), "repository").getValues(), contains(hasValue("nginx")));
+
+        List<YAMLFileDescriptor> templates =
+             query("MATCH (f:YAML:File {fileName: '/nginx/templates/service.yml'}) RETURN f").getColumn("f");
+
+        assertThat(templates.get(0).getDocuments(), hasSize(2));
+
+        List<String> entries = query("MATCH (:Tar:Archive)-[:CONTAINS]->(f:File) RETURN f.fileName AS fileName")
+                                    .getColumn("fileName");
+
+        assertThat(entries, containsInAnyOrder("/nginx/Chart.yaml", "/nginx/values.yaml",
+                                               "/nginx/templates/service.yml"));
+    }
+
+    @Test
+    void archivesWithoutAChartAtTheirTopLevelAreNotScanned(@TempDir Path directory) throws IOException {
+        File backup = directory.resolve("backup.tgz").toFile();
+
+        try (TarArchiveOutputStream archive =
+                  new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(backup.toPath())))) {
+            add(archive, "backup/config.yaml", "a: b\n");
+        }
+
+        File nested = directory.resolve("nested.tgz").toFile();
+
+        try (TarArchiveOutputStream archive =
+                  new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(nested.toPath())))) {
+            add(archive, "charts/nginx/Chart.yaml", "apiVersion: v2\nname: nginx\nversion: 1.2.3\n");
+        }
+
+        getScanner().scan(backup, backup.getAbsolutePath(), null);
+        getScanner().scan(nested, nested.getAbsolutePath(), null);
+
+        assertThat(query("MATCH (a:Tar:Archive) RETURN a").getRows(), empty());
+        assertThat(query("MATCH (f:YAML:File) RETURN f").getRows(), empty());
+    }
+
+    @Test
+    void rescanOfAChartWithAChangedFileKeepsTheKeysOfAllFiles(@TempDir Path directory) throws IOException {
+        File chart = directory.resolve("nginx-1.2.3.tgz").toFile();
+
+        writeChart(chart, "replicaCount: 2\n");
+        getScanner().scan(chart, chart.getAbsolutePath(), null);
+
+        // The entries of the archive are streamed, so each of them can only be read once per scan
+        writeChart(chart, "replicaCount: 3\nimage:\n  repository: nginx\n");
+
+        TarArchiveDescriptor archive = getScanner().scan(chart, chart.getAbsolutePath(), null);
+        String entries = format("MATCH (a:Tar:Archive)-[:CONTAINS]->(:YAML:File)-[:CONTAINS_DOCUMENT]->(d) " +
+                                "WHERE id(a) = %d " +
+                                "MATCH (d)-[:CONTAINS_KEY*]->(k:YAML:Key)-[:CONTAINS_VALUE]->(v:YAML:Value) " +
+                                "RETURN k.fqn + '=' + v.value AS entry", (Long) archive.getId());
+
+        assertThat(query(entries).getColumn("entry"),
+                   containsInAnyOrder("apiVersion=v2", "name=nginx", "version=1.2.3", "replicaCount=3",
+                                      "image.repository=nginx"));
+    }
+
+    private static void writeChart(File chart, String values) throws IOException {
+        try (TarArchiveOutputStream archive =
+                  new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(chart.toPath())))) {
+            add(archive, "nginx/Chart.yaml", "apiVersion: v2\nname: nginx\nversion: 1.2.3\n");
+            add(archive, "nginx/values.yaml", values);
+        }
+    }
+
+    private static void add(TarArchiveOutputStream archive, String name, String content) throws IOException {
+        byte[] bytes = content.getBytes(UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+
+        entry.setSize(bytes.length);
+        archive.putArchiveEntry(entry);
+        archive.write(bytes);
+        archive.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,64 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JSONFolderTest {
+
+    @Test
+    void nestedMappingsAndSequencesAreWrittenAsJSON() {
+        String json = fold("type: object\n" +
+                           "required: [name, port]\n" +
+                           "properties:\n" +
+                           "  name: {type: string}\n" +
+                           "  empty: []\n");
+
+        assertThat(json, equalTo("{\"type\":\"object\",\"required\":[\"name\",\"port\"]," +
+                                 "\"properties\":{\"name\":{\"type\":\"string\"},\"empty\":[]}}"));
+    }
+
+    @Test
+    void blankValuesAreWrittenAsNull() {
+        assertThat(fold("- a\n- \n- b: \n"), equalTo("[\"a\",null,{\"b\":null}]"));
+    }
+
+    @Test
+    void specialCharactersAreEscaped() {
+        assertThat(fold("- \"quote \\\" backslash \\\\ tab \\t bell \\a\"\n- \"line\\nbreak\"\n"),
+                   equalTo("[\"quote \\\" backslash \\\\ tab \\t bell \\u0007\",\"line\\nbreak\"]"));
+    }
+
+    @Test
+    void mappingsAsKeysAreRejected() {
+        assertThrows(IllegalStateException.class, () -> fold("? {a: b}\n: c\n"));
+    }
+
+    /**
+     * Folds the mapping or sequence of the given document.
+     */
+    private static String fold(String yaml) {
+        Parser parser = new ParserImpl(new StreamReader(new StringReader(yaml)));
+        JSONFolder folder = new JSONFolder();
+        Event event = parser.getEvent();
+
+        while (!(event instanceof CollectionStartEvent)) {
+            event = parser.getEvent();
+        }
+
+        while (!folder.add(event)) {
+            event = parser.getEvent();
+        }
+
+        return folder.toJSON();
+    }
+}
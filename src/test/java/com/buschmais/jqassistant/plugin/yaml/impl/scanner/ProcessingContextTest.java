@@ -1,16 +1,12 @@
 package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
 
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
-import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLKeyDescriptor;
-
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
 
-import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.Mockito.doReturn;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 class ProcessingContextTest {
 
@@ -29,35 +25,125 @@ class ProcessingContextTest {
 
     @Test
     void buildNextFQNWorksForLongName() {
-        YAMLDocumentDescriptor docDescriptor = Mockito.mock(YAMLDocumentDescriptor.class);
+        context.push(document());
+        context.push(key("A"));
+        context.push(key("B"));
+        context.push(key("C"));
+        context.push(key("D"));
+
+        assertThat(context.buildNextFQN("EON"), equalTo("A.B.C.D.EON"));
+    }
 
-        YAMLKeyDescriptor keyADescriptor = Mockito.mock(YAMLKeyDescriptor.class);
+    @Test
+    void buildNextFQNDoesNotContainPoppedKeys() {
+        context.push(document());
+        context.push(key("A"));
+        context.push(key("B"));
 
-        doReturn("A").when(keyADescriptor).getName();
-        doReturn(singletonList(keyADescriptor)).when(docDescriptor).getKeys();
+        assertThat(context.buildNextFQN("X"), equalTo("A.B.X"));
 
-        YAMLKeyDescriptor keyBDescriptor = Mockito.mock(YAMLKeyDescriptor.class);
+        context.pop();
+        context.push(key("C"));
 
-        doReturn("B").when(keyBDescriptor).getName();
-        doReturn(singletonList(keyBDescriptor)).when(keyADescriptor).getKeys();
+        assertThat(context.buildNextFQN("Y"), equalTo("A.C.Y"));
 
-        YAMLKeyDescriptor keyCDescriptor = Mockito.mock(YAMLKeyDescriptor.class);
+        context.pop();
+        context.pop();
 
-        doReturn("C").when(keyCDescriptor).getName();
-        doReturn(singletonList(keyCDescriptor)).when(keyBDescriptor).getKeys();
+        assertThat(context.buildNextFQN("Z"), equalTo("Z"));
+    }
 
-        YAMLKeyDescriptor keyDDescriptor = Mockito.mock(YAMLKeyDescriptor.class);
+    @Test
+    void buildNextFQNReturnsTheCachedNameAfterKeysHaveBeenPopped() {
+        StringCache strings = new StringCache(16);
 
-        doReturn("D").when(keyDDescriptor).getName();
-        doReturn(singletonList(keyDDescriptor)).when(keyCDescriptor).getKeys();
+        context = new ProcessingContext(strings);
+        context.push(document());
+        context.push(key("metadata"));
 
-        context.push(docDescriptor);
-        context.push(keyADescriptor);
-        context.push(keyBDescriptor);
-        context.push(keyCDescriptor);
-        context.push(keyDDescriptor);
+        String fqn = context.buildNextFQN("name");
 
-        assertThat(context.buildNextFQN("EON"), equalTo("A.B.C.D.EON"));
+        context.pop();
+        context.push(key("spec"));
+        context.pop();
+        context.push(key("metadata"));
+
+        assertThat(context.buildNextFQN("name"), sameInstance(fqn));
+        assertThat(strings.intern(new String("metadata.name")), sameInstance(fqn));
+    }
+
+    @Test
+    void buildNextFQNIgnoresStackedValues() {
+        context.push(document());
+        context.push(key("A"));
+        context.push(new DescriptorBatch.Node(null, null, null, null, 0));
+
+        assertThat(context.buildNextFQN("B"), equalTo("A.B"));
+    }
+
+    @Test
+    void buildNextPathContainsThePositionsOfTheItemsOfSequences() {
+        context.push(document());
+        context.enterCollection(false);
+        context.push(key("spec"));
+        context.enterCollection(false);
+        context.push(key("containers"));
+        context.enterCollection(true);
+        context.nextItem();
+        context.enterCollection(false);
+
+        assertThat(context.buildNextPath("image"), equalTo("spec.containers[0].image"));
+        assertThat(context.buildNextFQN("image"), equalTo("spec.containers.image"));
+
+        context.leaveCollection();
+        context.nextItem();
+        context.enterCollection(false);
+        context.push(key("args"));
+        context.enterCollection(true);
+        context.nextItem();
+        context.nextItem();
+
+        assertThat(context.buildItemPath(), equalTo("spec.containers[1].args[1]"));
+        assertThat(context.buildItemPath(0), equalTo("spec.containers[1].args[0]"));
+        assertThat(context.getItemPosition(), equalTo(1));
+
+        context.leaveCollection();
+        context.pop();
+        context.leaveCollection();
+        context.leaveCollection();
+        context.pop();
+
+        assertThat(context.buildNextPath("volumes"), equalTo("spec.volumes"));
+    }
+
+    @Test
+    void buildItemPathContainsThePositionsOfNestedSequences() {
+        context.push(document());
+        context.enterCollection(true);
+        context.nextItem();
+        context.nextItem();
+        context.enterCollection(true);
+        context.nextItem();
+
+        assertThat(context.buildItemPath(), equalTo("[1][0]"));
+        assertThat(context.isInSequence(), equalTo(true));
+    }
+
+    @Test
+    void nextKeyPositionNumbersTheKeysOfEachMapping() {
+        context.enterCollection(false);
+
+        assertThat(context.nextKeyPosition(), equalTo(0));
+
+        context.enterCollection(false);
+
+        assertThat(context.nextKeyPosition(), equalTo(0));
+        assertThat(context.nextKeyPosition(), equalTo(1));
+
+        context.leaveCollection();
+
+        assertThat(context.nextKeyPosition(), equalTo(1));
+        assertThat(context.isInSequence(), equalTo(false));
     }
 
     @Test
@@ -93,4 +179,66 @@ class ProcessingContextTest {
 
     }
 
+    @Test
+    void isContextComparesWithTheTopOfTheStackAfterPop() {
+        context.pushContextEvent(YAMLEmitter.ParseContext.DOCUMENT_CTX);
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_CXT);
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_KEY_CXT);
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_VALUE_CXT);
+
+        context.popContextEvent(2);
+
+        assertThat(context.isContext(YAMLEmitter.ParseContext.DOCUMENT_CTX, YAMLEmitter.ParseContext.MAPPING_CXT),
+                   equalTo(true));
+        assertThat(context.getContext(), equalTo(YAMLEmitter.ParseContext.MAPPING_CXT));
+    }
+
+    @Test
+    void stateIsRestoredByPop() {
+        context.pushContextEvent(YAMLEmitter.ParseContext.DOCUMENT_CTX);
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_CXT);
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_KEY_CXT);
+
+        int state = context.getState();
+
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_CXT);
+        context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_KEY_CXT);
+
+        // The state of a key of a nested mapping differs from the one of a key of the outer mapping
+        assertThat(context.getState(), not(equalTo(state)));
+
+        context.popContextEvent(2);
+
+        assertThat(context.getState(), equalTo(state));
+    }
+
+    @Test
+    void contextStackGrowsBeyondItsInitialCapacity() {
+        context.pushContextEvent(YAMLEmitter.ParseContext.DOCUMENT_CTX);
+
+        for (int i = 0; i < 100; i++) {
+            context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_CXT);
+            context.pushContextEvent(YAMLEmitter.ParseContext.MAPPING_KEY_CXT);
+        }
+
+        assertThat(context.isContext(YAMLEmitter.ParseContext.MAPPING_KEY_CXT, YAMLEmitter.ParseContext.MAPPING_CXT,
+                                     YAMLEmitter.ParseContext.MAPPING_KEY_CXT),
+                   equalTo(true));
+
+        context.popContextEvent(200);
+
+        assertThat(context.isContext(YAMLEmitter.ParseContext.DOCUMENT_CTX), equalTo(true));
+    }
+
+    private static DescriptorBatch.Node document() {
+        return new DescriptorBatch.Node(null, null, null, null, 0);
+    }
+
+    /**
+     * Creates a key, whose full qualified name does not matter for the
+     * processing context.
+     */
+    private static DescriptorBatch.Node key(String name) {
+        return new DescriptorBatch.Node(name, name, null, name, 0);
+    }
 }
@@ -0,0 +1,90 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScanBudgetTest {
+
+    @Test
+    void budgetWithoutLimitsIsNeverExceeded() {
+        ScanBudget budget = new ScanBudget(0, 0, 0, 0, 0);
+
+        for (int i = 0; i < 10_000; i++) {
+            budget.event();
+            budget.node();
+            budget.enterCollection();
+            budget.aliasExpansion();
+        }
+
+        budget.scalar(new String(new char[10_000]));
+    }
+
+    @Test
+    void numberOfNodesIsLimited() {
+        ScanBudget budget = new ScanBudget(2, 0, 0, 0, 0);
+
+        budget.node();
+        budget.node();
+
+        ScanBudget.ExceededException exceeded = assertThrows(ScanBudget.ExceededException.class, budget::node);
+
+        assertThat(exceeded.getMessage(), containsString("more than 2 keys and values"));
+    }
+
+    @Test
+    void depthIsLimitedButCollectionsCanBeLeftAgain() {
+        ScanBudget budget = new ScanBudget(0, 2, 0, 0, 0);
+
+        for (int i = 0; i < 10; i++) {
+            budget.enterCollection();
+            budget.enterCollection();
+            budget.leaveCollection();
+            budget.leaveCollection();
+        }
+
+        budget.enterCollection();
+        budget.enterCollection();
+
+        ScanBudget.ExceededException exceeded = assertThrows(ScanBudget.ExceededException.class,
+                                                             budget::enterCollection);
+
+        assertThat(exceeded.getMessage(), containsString("deeper than 2 levels"));
+    }
+
+    @Test
+    void aliasExpansionsAreLimited() {
+        ScanBudget budget = new ScanBudget(0, 0, 1, 0, 0);
+
+        budget.aliasExpansion();
+
+        assertThrows(ScanBudget.ExceededException.class, budget::aliasExpansion);
+    }
+
+    @Test
+    void lengthOfScalarsIsLimited() {
+        ScanBudget budget = new ScanBudget(0, 0, 0, 3, 0);
+
+        budget.scalar("abc");
+        budget.scalar(null);
+
+        assertThrows(ScanBudget.ExceededException.class, () -> budget.scalar("abcd"));
+    }
+
+    @Test
+    void scanTimeIsCheckedEveryFewEvents() throws InterruptedException {
+        ScanBudget budget = new ScanBudget(0, 0, 0, 0, 1);
+
+        Thread.sleep(10);
+
+        for (int i = 1; i < ScanBudget.EVENTS_PER_TIME_CHECK; i++) {
+            budget.event();
+        }
+
+        ScanBudget.ExceededException exceeded = assertThrows(ScanBudget.ExceededException.class, budget::event);
+
+        assertThat(exceeded.getMessage(), containsString("longer than 1 ms"));
+    }
+}
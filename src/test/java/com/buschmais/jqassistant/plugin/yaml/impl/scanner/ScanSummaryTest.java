@@ -0,0 +1,69 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class ScanSummaryTest {
+
+    @Test
+    void percentilesAreTheNearestRanksOfTheScanTimes() {
+        ScanSummary summary = new ScanSummary(0);
+
+        // Added in reverse order, as the scan times must be sorted
+        for (int millis = 100; millis > 0; millis--) {
+            summary.add("/" + millis + ".yaml", true, statistics(millis));
+        }
+
+        assertThat(summary.percentile(50), equalTo(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertThat(summary.percentile(99), equalTo(TimeUnit.MILLISECONDS.toNanos(99)));
+        assertThat(summary.percentile(100), equalTo(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    void percentileOfASingleFileIsItsScanTime() {
+        ScanSummary summary = new ScanSummary(0);
+
+        summary.add("/a.yaml", true, statistics(7));
+
+        assertThat(summary.percentile(50), equalTo(TimeUnit.MILLISECONDS.toNanos(7)));
+        assertThat(summary.percentile(99), equalTo(TimeUnit.MILLISECONDS.toNanos(7)));
+    }
+
+    @Test
+    void slowestFilesAreListedSlowestFirst() {
+        ScanSummary summary = new ScanSummary(3);
+
+        summary.add("/b.yaml", true, statistics(20));
+        summary.add("/a.yaml", true, statistics(5));
+        summary.add("/e.yaml", false, statistics(50));
+        summary.add("/c.yaml", true, statistics(30));
+        summary.add("/d.yaml", true, statistics(10));
+
+        assertThat(summary.slowestFiles(), contains("50 ms /e.yaml", "30 ms /c.yaml", "20 ms /b.yaml"));
+    }
+
+    @Test
+    void noSlowestFilesAreKeptIfNoneAreRequested() {
+        ScanSummary summary = new ScanSummary(0);
+
+        summary.add("/a.yaml", true, statistics(5));
+
+        assertThat(summary.isEmpty(), is(false));
+        assertThat(summary.slowestFiles(), empty());
+    }
+
+    private static ScanStatistics statistics(long millis) {
+        ScanStatistics statistics = new ScanStatistics();
+
+        statistics.finish(TimeUnit.MILLISECONDS.toNanos(millis));
+
+        return statistics;
+    }
+}
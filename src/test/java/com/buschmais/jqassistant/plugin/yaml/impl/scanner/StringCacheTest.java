@@ -0,0 +1,76 @@
+package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class StringCacheTest {
+
+    @Test
+    void equalStringsAreReplacedByTheCachedOne() {
+        StringCache strings = new StringCache(16);
+        String name = new String("metadata");
+
+        assertThat(strings.intern(name), sameInstance(name));
+        assertThat(strings.intern(new String("metadata")), sameInstance(name));
+    }
+
+    @Test
+    void charactersFoundInTheCacheAreNotBuiltAgain() {
+        StringCache strings = new StringCache(16);
+        String fqn = strings.intern(new StringBuilder("metadata.name"));
+
+        assertThat(fqn, equalTo("metadata.name"));
+        assertThat(strings.intern(new StringBuilder("metadata.").append("name")), sameInstance(fqn));
+        assertThat(strings.intern("metadata.name"), sameInstance(fqn));
+    }
+
+    @Test
+    void hashOfAppendedCharactersIsTheHashOfTheString() {
+        int hash = StringCache.hash(StringCache.hash(0, "metadata."), "name");
+
+        assertThat(hash, equalTo("metadata.name".hashCode()));
+    }
+
+    @Test
+    void cacheIsBoundedAndReplacesTheLeastRecentlyUsedString() {
+        StringCache strings = new StringCache(2);
+        String a = strings.intern(new String("a"));
+        String b = strings.intern(new String("b"));
+
+        // Both strings share the only two slots, a is used more recently than b
+        assertThat(strings.intern(new String("a")), sameInstance(a));
+
+        String c = strings.intern(new String("c"));
+
+        assertThat(strings.intern(new String("a")), sameInstance(a));
+        assertThat(strings.intern(new String("c")), sameInstance(c));
+        assertThat(strings.intern(new String("b")), not(sameInstance(b)));
+    }
+
+    @Test
+    void onlyShortValuesAreCached() {
+        StringCache strings = new StringCache(16);
+        String shortValue = strings.internValue(new String("nginx"));
+        String longValue = strings.internValue(new String(new char[StringCache.MAX_VALUE_LENGTH + 1]));
+
+        assertThat(strings.internValue(new String("nginx")), sameInstance(shortValue));
+        assertThat(strings.internValue(new String(new char[StringCache.MAX_VALUE_LENGTH + 1])),
+                   not(sameInstance(longValue)));
+        assertThat(strings.internValue(null), nullValue());
+    }
+
+    @Test
+    void cacheOfSizeZeroReturnsEachStringUnchanged() {
+        StringCache strings = new StringCache(0);
+        String name = new String("kind");
+
+        assertThat(strings.intern(name), sameInstance(name));
+        assertThat(strings.intern(new String("kind")), not(sameInstance(name)));
+        assertThat(strings.intern(new StringBuilder("kind")), equalTo("kind"));
+    }
+}
@@ -1,6 +1,11 @@
 package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -9,8 +14,10 @@ import com.buschmais.jqassistant.plugin.common.test.AbstractPluginIT;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLKeyDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLPathDescriptor;
 import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLValueDescriptor;
 
+import org.apache.commons.lang3.StringUtils;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
@@ -18,11 +25,16 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.Finders.findKeyByName;
 import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.Finders.findValueByValue;
 import static com.buschmais.jqassistant.plugin.yaml.impl.scanner.util.StringValueMatcher.hasValue;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Duration.ofSeconds;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.hasItem;
@@ -34,9 +46,16 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
 
 class YAMLFileScannerPluginIT extends AbstractPluginIT {
 
+    private static final String MERGE_KEY = "defaults: &defaults\n  adapter: postgres\n  host: localhost\n" +
+                                            "web:\n  <<: *defaults\n  host: example.org\n";
+    private static final String[] MERGED_KEYS = {
+        "web.<<.adapter=postgres", "web.<<.host=localhost", "web.host=example.org"
+    };
+
     @BeforeEach
     void startTransaction() {
         store.beginTransaction();
@@ -124,7 +143,7 @@ class YAMLFileScannerPluginIT extends AbstractPluginIT {
         assertThat(key.getName(), equalTo("b"));
         assertThat(key.getFullQualifiedName(), equalTo("b"));
         assertThat(key.getValues(), hasSize(0));
-        assertThat(key.getPosition(), equalTo(0));
+        assertThat(key.getPosition(), equalTo(1));
     }
 
     @Test
@@ -535,6 +554,742 @@ class YAMLFileScannerPluginIT extends AbstractPluginIT {
         assertThat(rbiNode.getValues(), hasItem(hasValue("Sammy Sosa")));
     }
 
+    @Test
+    void scanNodeForSammySosaTwiceInStreamingMode() {
+        String fileName = "sec-2.2-example-2.10-node-for-sammy-sosa-twice.yaml";
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/yamlspec/1.1/" + fileName);
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> nodes = query("MATCH (k:YAML:Key) RETURN k").getColumn("k");
+
+        assertThat(nodes, hasSize(2));
+
+        YAMLKeyDescriptor rbiNode = findKeyByName(nodes, "rbi");
+
+        assertThat(rbiNode.getValues(), hasSize(2));
+        assertThat(rbiNode.getValues(), containsInAnyOrder(hasValue("Sammy Sosa"), hasValue("Ken Griffey")));
+    }
+
+    @Test
+    void scanTwoDocumentsInAStreamInStreamingMode() {
+        String fileName = "sec-2.2-example-2.7-two-documensts-in-a-stream.yaml";
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/yamlspec/1.1/" + fileName);
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLFileDescriptor> fileDescriptors =
+             query(format("MATCH (f:YAML:File) WHERE f.fileName=~'.*/1.1/%s' RETURN f", fileName))
+                  .getColumn("f");
+
+        assertThat(fileDescriptors, hasSize(1));
+
+        YAMLFileDescriptor fileDescriptor = fileDescriptors.get(0);
+
+        assertThat(fileDescriptor.isValid(), is(true));
+        assertThat(fileDescriptor.getDocuments(), hasSize(2));
+
+        List<YAMLValueDescriptor> values = query("MATCH (:YAML:Document)-[:CONTAINS_VALUE]->(v:YAML:Value) RETURN v")
+             .getColumn("v");
+
+        assertThat(values, containsInAnyOrder(hasValue("Mark McGwire"), hasValue("Sammy Sosa"),
+                                              hasValue("Ken Griffey"), hasValue("Chicago Cubs"),
+                                              hasValue("St Louis Cardinals")));
+    }
+
+    @Test
+    void scanAliasOfAnchoredMappingInStreamingMode() {
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/valid/anchored-mapping.yaml");
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key) WHERE k.fqn = 'development.settings.host' RETURN k")
+             .getColumn("k");
+
+        assertThat(keys, hasSize(1));
+        assertThat(keys.get(0).getValues(), contains(hasValue("localhost")));
+    }
+
+    @Test
+    void scanDuplicateKeysInStreamingMode(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("duplicate-keys.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), "a: 1\nb: 2\na: 3\n".getBytes(UTF_8));
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key {fqn: 'a'})-[:CONTAINS_VALUE]->(v:YAML:Value) " +
+                                             "RETURN k ORDER BY v.value").getColumn("k");
+
+        // Each duplicate key is written as it is read
+        assertThat(keys, hasSize(2));
+        assertThat(keys.get(0).getValues(), contains(hasValue("1")));
+        assertThat(keys.get(1).getValues(), contains(hasValue("3")));
+    }
+
+    @Test
+    void scanDuplicateKeysInLoadMode(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("duplicate-keys.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), "a: 1\nb: 2\na: 3\n".getBytes(UTF_8));
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "false"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key {fqn: 'a'}) RETURN k").getColumn("k");
+
+        // The loaded mapping keeps only the last of the duplicate keys, at its own position
+        assertThat(keys, hasSize(1));
+        assertThat(keys.get(0).getValues(), contains(hasValue("3")));
+        assertThat(keys.get(0).getPosition(), equalTo(1));
+    }
+
+    @Test
+    void scanMergeKeyInStreamingMode(@TempDir Path directory) throws IOException {
+        scan(directory, MERGE_KEY, singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"));
+
+        assertThat(mergedKeys(), containsInAnyOrder(MERGED_KEYS));
+    }
+
+    @Test
+    void scanMergeKeyInLoadMode(@TempDir Path directory) throws IOException {
+        scan(directory, MERGE_KEY, singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "false"));
+
+        assertThat(mergedKeys(), containsInAnyOrder(MERGED_KEYS));
+    }
+
+    private List<String> mergedKeys() {
+        // Implicit tags are not resolved, so the merge key is written as a key of its own in both modes
+        return query("MATCH (k:YAML:Key)-[:CONTAINS_VALUE]->(v:YAML:Value) WHERE k.fqn STARTS WITH 'web.' " +
+                     "RETURN k.fqn + '=' + v.value AS entry").getColumn("entry");
+    }
+
+    @Test
+    void scanExplicitTagInStreamingMode(@TempDir Path directory) throws IOException {
+        scan(directory, "a: !!int 0x1A\n", singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"));
+
+        // The value is written as it is read
+        assertThat(query("MATCH (v:YAML:Value) RETURN v.value AS value").getColumn("value"), contains("0x1A"));
+    }
+
+    @Test
+    void scanExplicitTagInLoadMode(@TempDir Path directory) throws IOException {
+        scan(directory, "a: !!int 0x1A\n", singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "false"));
+
+        // The value is constructed for the tag and written as represented again
+        assertThat(query("MATCH (v:YAML:Value) RETURN v.value AS value").getColumn("value"), contains("26"));
+    }
+
+    @Test
+    void scanWithBatchSizeSmallerThanTheDocument() {
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/valid/anchored-mapping.yaml");
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_BATCH_SIZE, "1"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (:YAML:Document)-[:CONTAINS_KEY]->(:YAML:Key {fqn: 'development'})" +
+                                             "-[:CONTAINS_KEY]->(k:YAML:Key) RETURN k")
+             .getColumn("k");
+
+        assertThat(keys, hasSize(2));
+
+        YAMLKeyDescriptor settings = findKeyByName(keys, "settings");
+
+        assertThat(settings.getFullQualifiedName(), equalTo("development.settings"));
+        assertThat(settings.getKeys(), hasSize(2));
+
+        List<YAMLValueDescriptor> values = query("MATCH (:YAML:Key {fqn: 'development.settings.host'})" +
+                                                 "-[:CONTAINS_VALUE]->(v:YAML:Value) RETURN v")
+             .getColumn("v");
+
+        assertThat(values, contains(hasValue("localhost")));
+    }
+
+    @Test
+    void scanTwoDocumentsInAStreamWithParserThread() {
+        String fileName = "sec-2.2-example-2.7-two-documensts-in-a-stream.yaml";
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/yamlspec/1.1/" + fileName);
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_PARSER_THREAD, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLFileDescriptor> fileDescriptors =
+             query(format("MATCH (f:YAML:File) WHERE f.fileName=~'.*/1.1/%s' RETURN f", fileName))
+                  .getColumn("f");
+
+        assertThat(fileDescriptors, hasSize(1));
+
+        YAMLFileDescriptor fileDescriptor = fileDescriptors.get(0);
+
+        assertThat(fileDescriptor.isValid(), is(true));
+        assertThat(fileDescriptor.getDocuments(), hasSize(2));
+
+        List<YAMLValueDescriptor> values = query("MATCH (:YAML:Document)-[:CONTAINS_VALUE]->(v:YAML:Value) RETURN v")
+             .getColumn("v");
+
+        assertThat(values, containsInAnyOrder(hasValue("Mark McGwire"), hasValue("Sammy Sosa"),
+                                              hasValue("Ken Griffey"), hasValue("Chicago Cubs"),
+                                              hasValue("St Louis Cardinals")));
+    }
+
+    @Test
+    void ifParsingFailsWithParserThreadThereWillBeNoNodesForTheContentOfTheYAMLFile() {
+        String fileName = "hostconfig-invalid.yaml";
+
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/invalid/" + fileName);
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_PARSER_THREAD, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLFileDescriptor> fileDescriptors =
+             query(format("MATCH (f:YAML:File) WHERE f.fileName=~'.*/%s' RETURN f", fileName))
+                  .getColumn("f");
+
+        assertThat(fileDescriptors.get(0).isValid(), is(false));
+        assertThat(validityOf(fileDescriptors.get(0).getDocuments()), contains(false));
+
+        List<Map<String, Object>> rows = query(format("MATCH (f:YAML:File)-[*]->(c) WHERE f.fileName=~'.*/%s' " +
+                                                      "AND (c:Key OR c:Value) RETURN c", fileName)).getRows();
+
+        assertThat(rows, empty());
+    }
+
+    @Test
+    void rescanOfAnUnchangedFileKeepsTheDocumentsOfTheFirstScan(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("unchanged.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), "a: b\nc: d\n".getBytes(UTF_8));
+
+        YAMLFileDescriptor firstScan = getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+        YAMLDocumentDescriptor document = firstScan.getDocuments().get(0);
+
+        assertThat(firstScan.getMd5(), equalTo(YAMLFileScannerPlugin.toHex(YAMLFileScannerPlugin.md5Digest()
+                                                                  .digest("a: b\nc: d\n".getBytes(UTF_8)))));
+        assertThat(firstScan.getSettings(), notNullValue());
+
+        YAMLFileDescriptor secondScan = getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(secondScan.getMd5(), equalTo(firstScan.getMd5()));
+        assertThat(secondScan.isValid(), is(true));
+        assertThat(secondScan.getDocuments(), contains(document));
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key) RETURN k").getColumn("k");
+
+        assertThat(keys, hasSize(2));
+    }
+
+    @Test
+    void rescanWithOtherSettingsReplacesTheDocumentsOfTheFirstScan(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("unchanged.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), "a: b\nc: d\n".getBytes(UTF_8));
+
+        YAMLFileDescriptor firstScan = getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+        String md5OfFirstScan = firstScan.getMd5();
+        String settingsOfFirstScan = firstScan.getSettings();
+        YAMLFileDescriptor secondScan = getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_INCLUDE, "a"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(secondScan.getMd5(), equalTo(md5OfFirstScan));
+        assertThat(secondScan.getSettings(), not(equalTo(settingsOfFirstScan)));
+        assertThat(secondScan.getDocuments(), hasSize(1));
+        assertThat(query("MATCH (k:YAML:Key) RETURN k.fqn AS fqn").getColumn("fqn"), contains("a"));
+    }
+
+    @Test
+    void rescanOfAChangedFileReplacesTheDocumentsOfTheFirstScan(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("changed.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), "a: b\nc: d\n".getBytes(UTF_8));
+
+        YAMLFileDescriptor firstScan = getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+        String md5OfFirstScan = firstScan.getMd5();
+
+        Files.write(yamlFile.toPath(), "e: f\n".getBytes(UTF_8));
+
+        YAMLFileDescriptor secondScan = getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(secondScan.getMd5(), not(equalTo(md5OfFirstScan)));
+        assertThat(secondScan.getDocuments(), hasSize(1));
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key) RETURN k").getColumn("k");
+        List<YAMLValueDescriptor> values = query("MATCH (v:YAML:Value) RETURN v").getColumn("v");
+
+        assertThat(keys, hasSize(1));
+        assertThat(keys.get(0).getFullQualifiedName(), equalTo("e"));
+        assertThat(values, contains(hasValue("f")));
+    }
+
+    @Test
+    void identicalDocumentsOfDifferentFilesAreWrittenOnce(@TempDir Path directory) throws IOException {
+        File vendored = directory.resolve("vendored.yaml").toFile();
+        File copy = directory.resolve("copy.yaml").toFile();
+
+        Files.write(vendored.toPath(), ("name: web\n" +
+                                        "ports: [80, 443]\n" +
+                                        "---\n" +
+                                        "kind: Service\n").getBytes(UTF_8));
+        Files.write(copy.toPath(), ("# A copy of the first document\n" +
+                                    "name: 'web'\n" +
+                                    "ports:\n" +
+                                    "  - 80\n" +
+                                    "  - \"443\"\n").getBytes(UTF_8));
+
+        Map<String, Object> properties = singletonMap(YAMLFileScannerPlugin.PROPERTY_DEDUPLICATE_DOCUMENTS, "true");
+        YAMLFileDescriptor first = getScanner(properties).scan(vendored, vendored.getAbsolutePath(), null);
+        YAMLFileDescriptor second = getScanner(properties).scan(copy, copy.getAbsolutePath(), null);
+        YAMLDocumentDescriptor document = first.getDocuments().get(0);
+
+        assertThat(second.isValid(), is(true));
+        assertThat(second.getDocuments(), contains(document));
+        assertThat(document.getHash(), notNullValue());
+        assertThat(query("MATCH (d:YAML:Document) RETURN count(d) AS count").getColumn("count"), contains(2L));
+        assertThat(query("MATCH (k:YAML:Key) RETURN count(k) AS count").getColumn("count"), contains(3L));
+
+        // The document is kept for the copy if the first file changes
+        Files.write(vendored.toPath(), "kind: Service\n".getBytes(UTF_8));
+        getScanner(properties).scan(vendored, vendored.getAbsolutePath(), null);
+
+        assertThat(findKeyByName(second.getDocuments().get(0).getKeys(), "name").getValues(),
+                   contains(hasValue("web")));
+        assertThat(query("MATCH (d:YAML:Document) RETURN count(d) AS count").getColumn("count"), contains(2L));
+    }
+
+    @Test
+    void documentsWithTheSameHashButAnotherSizeAreNotShared(@TempDir Path directory) throws IOException {
+        File first = directory.resolve("first.yaml").toFile();
+        File second = directory.resolve("second.yaml").toFile();
+
+        Files.write(first.toPath(), "name: web\n".getBytes(UTF_8));
+        Files.write(second.toPath(), "name: web\n".getBytes(UTF_8));
+
+        Map<String, Object> properties = singletonMap(YAMLFileScannerPlugin.PROPERTY_DEDUPLICATE_DOCUMENTS, "true");
+        YAMLFileDescriptor firstDescriptor = getScanner(properties).scan(first, first.getAbsolutePath(), null);
+        YAMLDocumentDescriptor document = firstDescriptor.getDocuments().get(0);
+
+        assertThat(document.getHash(), matchesPattern("[0-9A-F]{64}"));
+        assertThat(document.getSize(), equalTo(2L));
+
+        // A document of another size with the same hash would be a collision of the hashes
+        document.setSize(3L);
+
+        YAMLFileDescriptor descriptor = getScanner(properties).scan(second, second.getAbsolutePath(), null);
+
+        assertThat(descriptor.getDocuments(), hasSize(1));
+        assertThat(descriptor.getDocuments(), not(contains(document)));
+        assertThat(descriptor.getDocuments().get(0).getHash(), equalTo(document.getHash()));
+        assertThat(query("MATCH (k:YAML:Key) RETURN count(k) AS count").getColumn("count"), contains(2L));
+    }
+
+    @Test
+    void scanAliasOfAnchoredMappingWithSharedAliases() {
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class),
+                                 "/probes/valid/anchored-mapping.yaml");
+
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_SHARE_ALIASES, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key) RETURN k").getColumn("k");
+
+        assertThat(keys, hasSize(6));
+
+        List<YAMLKeyDescriptor> settings = query("MATCH (k:YAML:Key) WHERE k.fqn = 'development.settings' RETURN k")
+             .getColumn("k");
+
+        assertThat(settings, hasSize(1));
+
+        YAMLKeyDescriptor host = findKeyByName(settings.get(0).getKeys(), "host");
+
+        assertThat(settings.get(0).getKeys(), hasSize(2));
+        assertThat(host.getFullQualifiedName(), equalTo("defaults.host"));
+        assertThat(host.getValues(), contains(hasValue("localhost")));
+    }
+
+    @Test
+    void scanMergeKeysAndAliasesInSequencesWithSharedAliases(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("docker-compose.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("defaults: &defaults\n" +
+                                        "  image: base\n" +
+                                        "  ports: &ports\n" +
+                                        "    - 80\n" +
+                                        "    - 443\n" +
+                                        "web:\n" +
+                                        "  <<: *defaults\n" +
+                                        "  command: serve\n" +
+                                        "proxy:\n" +
+                                        "  upstreams:\n" +
+                                        "    - *ports\n" +
+                                        "    - *defaults\n").getBytes(UTF_8));
+
+        YAMLFileDescriptor file = getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_SHARE_ALIASES, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(file.isValid(), is(true));
+
+        List<YAMLKeyDescriptor> merged = query("MATCH (:YAML:Key {fqn: 'web.<<'})-[:CONTAINS_KEY]->(k:YAML:Key) RETURN k")
+             .getColumn("k");
+
+        assertThat(merged, hasSize(2));
+        assertThat(findKeyByName(merged, "image").getFullQualifiedName(), equalTo("defaults.image"));
+
+        List<YAMLKeyDescriptor> upstreams = query("MATCH (k:YAML:Key {fqn: 'proxy.upstreams'}) RETURN k").getColumn("k");
+
+        assertThat(upstreams, hasSize(1));
+        assertThat(upstreams.get(0).getKeys(), hasSize(2));
+        assertThat(upstreams.get(0).getValues(), hasSize(1));
+        assertThat(upstreams.get(0).getValues().get(0).getValues(), containsInAnyOrder(hasValue("80"), hasValue("443")));
+
+        List<YAMLValueDescriptor> ports = query("MATCH (v:YAML:Value {value: '80'}) RETURN v").getColumn("v");
+
+        assertThat(ports, hasSize(1));
+    }
+
+    @Test
+    void scanOfExponentialAliasExpansionWithSharedAliasesWritesEachAnchoredNodeOnce(@TempDir Path directory)
+         throws IOException {
+        File yamlFile = directory.resolve("laughs.yaml").toFile();
+        StringBuilder laughs = new StringBuilder("a: &a [lol, lol, lol, lol, lol, lol, lol, lol, lol]\n");
+
+        for (char level = 'b'; level <= 'i'; level++) {
+            char previous = (char) (level - 1);
+
+            laughs.append(format("%s: &%s [*%s, *%s, *%s, *%s, *%s, *%s, *%s, *%s, *%s]\n", level, level,
+                                 previous, previous, previous, previous, previous, previous, previous, previous,
+                                 previous));
+        }
+
+        Files.write(yamlFile.toPath(), laughs.toString().getBytes(UTF_8));
+
+        YAMLFileDescriptor file = getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_SHARE_ALIASES, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(file.isValid(), is(true));
+
+        List<YAMLKeyDescriptor> keys = query("MATCH (k:YAML:Key) RETURN k").getColumn("k");
+        List<YAMLValueDescriptor> values = query("MATCH (v:YAML:Value) RETURN v").getColumn("v");
+
+        // The nine items of a and a value for each alias containing the items of the anchored sequence
+        assertThat(keys, hasSize(9));
+        assertThat(values, hasSize(9 + 8 * 9));
+
+        // Replacing the documents must not follow each of the shared paths
+        Files.write(yamlFile.toPath(), "e: f\n".getBytes(UTF_8));
+        getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_SHARE_ALIASES, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        keys = query("MATCH (k:YAML:Key) RETURN k").getColumn("k");
+        values = query("MATCH (v:YAML:Value) RETURN v").getColumn("v");
+
+        assertThat(keys, hasSize(1));
+        assertThat(values, contains(hasValue("f")));
+    }
+
+    @Test
+    void scanOfDeeplyNestedSequencesStopsAtTheDepthLimit(@TempDir Path directory) throws IOException {
+        StringBuilder nested = new StringBuilder("a: ");
+
+        for (int i = 0; i < 100_000; i++) {
+            nested.append('[');
+        }
+        for (int i = 0; i < 100_000; i++) {
+            nested.append(']');
+        }
+
+        YAMLFileDescriptor file = assertTimeout(ofSeconds(30), () ->
+             scan(directory, nested, singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true")));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("nested deeper than 1000 levels"));
+    }
+
+    @Test
+    void scanOfDeeplyNestedSequencesStopsAtTheDepthLimitInLoadMode(@TempDir Path directory) throws IOException {
+        StringBuilder nested = new StringBuilder("a: ");
+
+        for (int i = 0; i < 100_000; i++) {
+            nested.append('[');
+        }
+        for (int i = 0; i < 100_000; i++) {
+            nested.append(']');
+        }
+
+        YAMLFileDescriptor file = assertTimeout(ofSeconds(30), () ->
+             scan(directory, nested, singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "false")));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("nested deeper than 1000 levels"));
+    }
+
+    @Test
+    void scanOfSequencesNestedUpToTheDepthLimitInLoadMode(@TempDir Path directory) throws IOException {
+        StringBuilder nested = new StringBuilder("a: ");
+
+        for (int i = 0; i < 999; i++) {
+            nested.append('[');
+        }
+        nested.append('b');
+        for (int i = 0; i < 999; i++) {
+            nested.append(']');
+        }
+
+        YAMLFileDescriptor file = scan(directory, nested,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "false"));
+
+        // The mapping of the document is the first level
+        assertThat(file.isValid(), is(true));
+    }
+
+    @Test
+    void scanOfExponentialAliasExpansionStopsAtTheAliasLimit(@TempDir Path directory) throws IOException {
+        StringBuilder laughs = new StringBuilder("a: &a [lol, lol, lol, lol, lol, lol, lol, lol, lol]\n");
+
+        for (char level = 'b'; level <= 'j'; level++) {
+            char previous = (char) (level - 1);
+
+            laughs.append(format("%s: &%s [*%s, *%s, *%s, *%s, *%s, *%s, *%s, *%s, *%s]\n", level, level,
+                                 previous, previous, previous, previous, previous, previous, previous, previous,
+                                 previous));
+        }
+
+        YAMLFileDescriptor file = assertTimeout(ofSeconds(30), () -> scan(directory, laughs, emptyMap()));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("aliases of the file expand to more than 100000 events"));
+    }
+
+    @Test
+    void scanOfAHugeScalarStopsAtTheScalarLimit(@TempDir Path directory) throws IOException {
+        StringBuilder huge = new StringBuilder("a: ");
+
+        for (int i = 0; i < 100_000; i++) {
+            huge.append('x');
+        }
+
+        YAMLFileDescriptor file = scan(directory, huge,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_MAX_SCALAR_LENGTH, "1000"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("scalar longer than 1000 characters"));
+    }
+
+    @Test
+    void scanOfAHugeScalarStopsAtTheDocumentLimit(@TempDir Path directory) throws IOException {
+        StringBuilder huge = new StringBuilder("a: b\n---\nc: ");
+
+        for (int i = 0; i < 100_000; i++) {
+            huge.append('x');
+        }
+
+        YAMLFileDescriptor file = scan(directory, huge,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_MAX_DOCUMENT_LENGTH, "1000"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("document starting at line 2 is longer than 1000 characters"));
+        assertThat(query("MATCH (n:YAML) WHERE n:Document OR n:Key OR n:Value RETURN n").getRows(), empty());
+    }
+
+    @Test
+    void scanOfAFileWithTooManyKeysStopsAtTheNodeLimit(@TempDir Path directory) throws IOException {
+        StringBuilder wide = new StringBuilder();
+
+        for (int i = 0; i < 10_000; i++) {
+            wide.append("key").append(i).append(": value\n");
+        }
+
+        YAMLFileDescriptor file = scan(directory, wide, singletonMap(YAMLFileScannerPlugin.PROPERTY_MAX_NODES, "100"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("more than 100 keys and values"));
+    }
+
+    @Test
+    void scanOfALargeFileStopsAtTheTimeLimit(@TempDir Path directory) throws IOException {
+        StringBuilder large = new StringBuilder();
+
+        for (int i = 0; i < 500_000; i++) {
+            large.append("key").append(i).append(": value\n");
+        }
+
+        YAMLFileDescriptor file = assertTimeout(ofSeconds(30), () ->
+             scan(directory, large, singletonMap(YAMLFileScannerPlugin.PROPERTY_MAX_SCAN_TIME, "100")));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("longer than 100 ms"));
+    }
+
+    @Test
+    void reasonOfAFileScannedSuccessfullyAfterAFailedScanIsRemoved(@TempDir Path directory) throws IOException {
+        YAMLFileDescriptor file = scan(directory, new StringBuilder("a: [b, c"), emptyMap());
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), notNullValue());
+
+        file = scan(directory, new StringBuilder("a: [b, c]"), emptyMap());
+
+        assertThat(file.isValid(), is(true));
+        assertThat(file.getReason(), nullValue());
+    }
+
+    @Test
+    void failedScanLeavesNoKeysOrValuesOfTheFailedDocumentInTheStore(@TempDir Path directory) throws IOException {
+        YAMLFileDescriptor file = scan(directory, new StringBuilder("a: b\nc: [d, e]\n---\nf: [g\n"), emptyMap());
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(true, false));
+        assertThat(query("MATCH (k:YAML:Key) RETURN k.fqn AS fqn").getColumn("fqn"), containsInAnyOrder("a", "c"));
+    }
+
+    @Test
+    void failedScanLeavesNoDocumentsKeysOrValuesInTheStoreIfALimitIsExceeded(@TempDir Path directory)
+         throws IOException {
+        YAMLFileDescriptor file = scan(directory, new StringBuilder("a: b\nc: [d, e]\n---\nf: [g, h, i]\n"),
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_MAX_NODES, "6"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(file.getReason(), containsString("more than 6 keys and values"));
+        assertThat(query("MATCH (n:YAML) WHERE n:Document OR n:Key OR n:Value RETURN n").getRows(), empty());
+    }
+
+    @Test
+    void failedScanOfAFileWrittenInPartsLeavesNoKeysOrValuesInTheStore(@TempDir Path directory)
+         throws IOException {
+        StringBuilder content = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            content.append("key").append(i).append(": [a, b]\n");
+        }
+        content.append("broken: [\n");
+
+        YAMLFileDescriptor file = scan(directory, content,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_STAGING_LIMIT, "10"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(false));
+        assertThat(query("MATCH (n:YAML) WHERE n:Key OR n:Value RETURN n").getRows(), empty());
+    }
+
+    @Test
+    void failedDocumentOfAFileWrittenInPartsKeepsTheDocumentsBeforeIt(@TempDir Path directory) throws IOException {
+        StringBuilder content = new StringBuilder("first: [a, b]\n---\n");
+
+        for (int i = 0; i < 100; i++) {
+            content.append("key").append(i).append(": [a, b]\n");
+        }
+        content.append("broken: [\n---\nlast: [a, b]\n");
+
+        YAMLFileDescriptor file = scan(directory, content,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_STAGING_LIMIT, "10"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(true, false, true));
+        assertThat(query("MATCH (k:YAML:Key) RETURN k.fqn AS fqn").getColumn("fqn"),
+                   containsInAnyOrder("first", "last"));
+        assertThat(query("MATCH (v:YAML:Value) RETURN v").getRows(), hasSize(4));
+    }
+
+    @Test
+    void scanOfAFileWrittenInPartsIsComplete(@TempDir Path directory) throws IOException {
+        StringBuilder content = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            content.append("key").append(i).append(": [a, b]\n");
+        }
+
+        YAMLFileDescriptor file = scan(directory, content,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_STAGING_LIMIT, "10"));
+
+        assertThat(file.isValid(), is(true));
+        assertThat(query("MATCH (:YAML:File)-[:CONTAINS_DOCUMENT]->(:YAML:Document)-[:CONTAINS_KEY]->(k:YAML:Key)" +
+                         "-[:CONTAINS_VALUE]->(:YAML:Value) RETURN k").getRows(), hasSize(200));
+    }
+
+    @Test
+    void statisticsOfTheScanAreStoredIfEnabled(@TempDir Path directory) throws IOException {
+        String content = "a:\n  b: [c, d]\n---\ne: f\n";
+        YAMLFileDescriptor file = scan(directory, content,
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_STATISTICS, "true"));
+
+        assertThat(file.isValid(), is(true));
+        assertThat(file.getBytes(), equalTo((long) content.length()));
+        assertThat(file.getDocumentCount(), equalTo(2L));
+        assertThat(file.getKeyCount(), equalTo(3L));
+        assertThat(file.getValueCount(), equalTo(3L));
+        assertThat(file.getMaxDepth(), equalTo(3L));
+        assertThat(file.getParseTime(), notNullValue());
+        assertThat(file.getWriteTime(), notNullValue());
+    }
+
+    @Test
+    void statisticsOfTheScanAreNotStoredByDefault(@TempDir Path directory) throws IOException {
+        YAMLFileDescriptor file = scan(directory, "a: b\n", emptyMap());
+
+        assertThat(file.isValid(), is(true));
+        assertThat(file.getBytes(), nullValue());
+        assertThat(file.getKeyCount(), nullValue());
+        assertThat(file.getParseTime(), nullValue());
+    }
+
+    @Test
+    void scanThroughAFileChannelReadsTheSameContentAsAStream(@TempDir Path directory) throws Exception {
+        String content = "\uFEFFa: \u00E4\u20AC\uD83D\uDE00\nb: [c, d]\n";
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(YAMLFileScannerPlugin.PROPERTY_CHANNEL_THRESHOLD, "1");
+        properties.put(YAMLFileScannerPlugin.PROPERTY_STATISTICS, "true");
+
+        YAMLFileDescriptor file = scan(directory, content, properties);
+        byte[] bytes = content.getBytes(UTF_8);
+
+        assertThat(file.isValid(), is(true));
+        assertThat(file.getBytes(), equalTo((long) bytes.length));
+        assertThat(query("MATCH (:YAML:Key {name: 'a'})-[:CONTAINS_VALUE]->(v:YAML:Value) RETURN v.value AS value")
+                        .getColumn("value"), contains("\u00E4\u20AC\uD83D\uDE00"));
+
+        YAMLFileDescriptor streamed = scan(Files.createDirectory(directory.resolve("streamed")), content,
+                                           singletonMap(YAMLFileScannerPlugin.PROPERTY_CHANNEL_THRESHOLD, "0"));
+
+        assertThat(file.getMd5(), equalTo(streamed.getMd5()));
+        assertThat(file.getMd5(),
+                   equalTo(YAMLFileScannerPlugin.toHex(YAMLFileScannerPlugin.md5Digest().digest(bytes))));
+    }
+
+    /**
+     * Returns whether each of the given documents is valid, in the order of
+     * the documents.
+     */
+    private static List<Boolean> validityOf(List<YAMLDocumentDescriptor> documents) {
+        List<Boolean> validity = new ArrayList<>();
+
+        for (YAMLDocumentDescriptor document : documents) {
+            validity.add(document.isValid());
+        }
+
+        return validity;
+    }
+
+    /**
+     * Scans a file with the given content in the given directory.
+     */
+    private YAMLFileDescriptor scan(Path directory, CharSequence content, Map<String, Object> properties)
+         throws IOException {
+        File yamlFile = directory.resolve("generated.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), content.toString().getBytes(UTF_8));
+
+        return getScanner(properties).scan(yamlFile, yamlFile.getAbsolutePath(), null);
+    }
+
 //    @Test
 //    void scan//             {"/probes/yamlspec/1.1/sec-2.2-example-2.11-mapping-betweend-sequences.yaml"},
 //             {"/probes/yamlspec/1.1/sec-2.2-example-2.11-mapping-betweend-sequences.yaml"},
@@ -766,12 +1521,262 @@ class YAMLFileScannerPluginIT extends AbstractPluginIT {
         YAMLFileDescriptor fileDescriptor = fileDescriptors.get(0);
 
         assertThat(fileDescriptor.isValid(), is(false));
+        assertThat(fileDescriptor.getDocuments(), hasSize(1));
+        assertThat(fileDescriptor.getDocuments().get(0).isValid(), is(false));
+        assertThat(fileDescriptor.getDocuments().get(0).getReason(), equalTo(fileDescriptor.getReason()));
 
-        List<Map<String, Object>> rows = query(format("MATCH (f:YAML:File)-[*]->(c) WHERE f.fileName=~'.*/%s' RETURN c", fileName)).getRows();
+        List<Map<String, Object>> rows = query(format("MATCH (f:YAML:File)-[*]->(c) WHERE f.fileName=~'.*/%s' " +
+                                                      "AND (c:Key OR c:Value) RETURN c", fileName)).getRows();
 
         assertThat(rows, empty());
     }
 
+    @Test
+    void keysAreIndexedByTheirFullQualifiedNameAndTheirName() {
+        List<Object> indexes = query("CALL db.indexes() YIELD description RETURN description").getColumn("description");
+
+        assertThat(indexes, hasItem("INDEX ON :Key(fqn)"));
+        assertThat(indexes, hasItem("INDEX ON :Key(name)"));
+    }
+
+    @Test
+    void keysAndItemsOfSequencesHaveTheirPathAndPosition(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("pod.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("spec:\n" +
+                                        "  containers:\n" +
+                                        "  - name: web\n" +
+                                        "    image: nginx\n" +
+                                        "  - name: sidecar\n" +
+                                        "    image: envoy\n" +
+                                        "    args: [--verbose, --port]\n").getBytes(UTF_8));
+
+        getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> images =
+             query("MATCH (k:YAML:Key:Path {path: 'spec.containers[1].image'}) RETURN k").getColumn("k");
+
+        assertThat(images, hasSize(1));
+        assertThat(images.get(0).getFullQualifiedName(), equalTo("spec.containers.image"));
+        assertThat(images.get(0).getPosition(), equalTo(1));
+
+        List<YAMLValueDescriptor> args =
+             query("MATCH (v:YAML:Value:Path {path: 'spec.containers[1].args[1]'}) RETURN v").getColumn("v");
+
+        assertThat(args, contains(hasValue("--port")));
+        assertThat(args.get(0).getPosition(), equalTo(1));
+
+        List<Object> indexes = query("CALL db.indexes() YIELD description RETURN description").getColumn("description");
+
+        assertThat(indexes, hasItem("INDEX ON :Path(path)"));
+        assertThat(indexes, not(hasItem("INDEX ON :YAML(path)")));
+    }
+
+    @Test
+    void pathsTooLongForTheIndexAreNotSet(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("long.yaml").toFile();
+        String name = StringUtils.repeat('k', YAMLPathDescriptor.MAX_PATH_LENGTH);
+
+        Files.write(yamlFile.toPath(), ("a:\n  " + name + ": [b]\nc: d\n").getBytes(UTF_8));
+
+        getScanner().scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        YAMLKeyDescriptor key = (YAMLKeyDescriptor) query("MATCH (k:YAML:Key {name: '" + name + "'}) RETURN k")
+             .getColumn("k").get(0);
+
+        assertThat(key.getPath(), nullValue());
+        assertThat(key.getFullQualifiedName(), equalTo("a." + name));
+        assertThat(query("MATCH (:YAML:Key:Path {path: 'c'}) RETURN count(*) AS keys").getColumn("keys"),
+                   contains(1L));
+    }
+
+    @Test
+    void onlyIncludedKeysAndTheKeysContainingThemAreWritten(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("deployment.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("kind: Deployment\n" +
+                                        "metadata:\n" +
+                                        "  name: web\n" +
+                                        "spec:\n" +
+                                        "  replicas: 2\n" +
+                                        "  containers:\n" +
+                                        "  - name: web\n" +
+                                        "    image: nginx\n" +
+                                        "    resources:\n" +
+                                        "      limits:\n" +
+                                        "        cpu: 500m\n" +
+                                        "      requests:\n" +
+                                        "        cpu: 250m\n" +
+                                        "  - name: sidecar\n" +
+                                        "    image: envoy\n").getBytes(UTF_8));
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(YAMLFileScannerPlugin.PROPERTY_INCLUDE, "**.image, **.resources");
+        properties.put(YAMLFileScannerPlugin.PROPERTY_EXCLUDE, "**.requests");
+
+        YAMLFileDescriptor file = getScanner(properties).scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(file.isValid(), is(true));
+        assertThat(file.getDocuments(), hasSize(1));
+
+        List<String> fqns = query("MATCH (k:YAML:Key) RETURN k.fqn AS fqn ORDER BY fqn").getColumn("fqn");
+
+        assertThat(fqns, contains("spec", "spec.containers", "spec.containers.image", "spec.containers.image",
+                                  "spec.containers.resources", "spec.containers.resources.limits",
+                                  "spec.containers.resources.limits.cpu"));
+
+        List<String> values = query("MATCH (v:YAML:Value) RETURN v.value AS value ORDER BY value").getColumn("value");
+
+        assertThat(values, contains("500m", "envoy", "nginx"));
+
+        List<String> images =
+             query("MATCH (:YAML:Document)-[:CONTAINS_KEY]->(:YAML:Key {fqn: 'spec'})" +
+                   "-[:CONTAINS_KEY]->(:YAML:Key {fqn: 'spec.containers'})" +
+                   "-[:CONTAINS_KEY]->(:YAML:Key {fqn: 'spec.containers.image'})-[:CONTAINS_VALUE]->(v:YAML:Value) " +
+                   "RETURN v.value AS image ORDER BY image").getColumn("image");
+
+        assertThat(images, contains("envoy", "nginx"));
+    }
+
+    @Test
+    void sequencesOfScalarsAreWrittenAsItemsOfTheirKeyInCompactMode(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("compact.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("allowlist:\n" +
+                                        "  - 10.0.0.1\n" +
+                                        "  - 10.0.0.2\n" +
+                                        "empty: []\n" +
+                                        "matrix:\n" +
+                                        "  - [a, b]\n" +
+                                        "  - c\n" +
+                                        "containers:\n" +
+                                        "  - sidecar\n" +
+                                        "  - name: web\n" +
+                                        "    args: [--port, \"8080\"]\n").getBytes(UTF_8));
+
+        YAMLFileDescriptor file = getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_COMPACT_SEQUENCES, "true"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(file.isValid(), is(true));
+
+        YAMLDocumentDescriptor document = file.getDocuments().get(0);
+        YAMLKeyDescriptor allowlist = findKeyByName(document.getKeys(), "allowlist");
+
+        assertThat(allowlist.getItems(), arrayContaining("10.0.0.1", "10.0.0.2"));
+        assertThat(allowlist.getItemCount(), equalTo(2));
+        assertThat(allowlist.getValues(), empty());
+
+        List<YAMLKeyDescriptor> listed = query("MATCH (k:YAML:Key) WHERE '10.0.0.2' IN k.items RETURN k").getColumn("k");
+
+        assertThat(listed, contains(allowlist));
+        assertThat(findKeyByName(document.getKeys(), "empty").getItemCount(), equalTo(0));
+
+        // Sequences containing other sequences or mappings keep their values
+        YAMLKeyDescriptor matrix = findKeyByName(document.getKeys(), "matrix");
+
+        assertThat(matrix.getItems(), nullValue());
+        assertThat(matrix.getItemCount(), nullValue());
+        assertThat(matrix.getValues(), hasSize(2));
+
+        YAMLKeyDescriptor containers = findKeyByName(document.getKeys(), "containers");
+        YAMLValueDescriptor sidecar = findValueByValue(containers.getValues(), "sidecar");
+
+        assertThat(containers.getItems(), nullValue());
+        assertThat(sidecar.getPath(), equalTo("containers[0]"));
+        assertThat(sidecar.getPosition(), equalTo(0));
+        assertThat(findKeyByName(containers.getKeys(), "args").getItems(), arrayContaining("--port", "8080"));
+    }
+
+    @Test
+    void aliasesOfSequencesOfScalarsAreWrittenAsItemsInCompactMode(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("ports.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("ports: &ports [80, 443]\n" +
+                                        "proxy:\n" +
+                                        "  upstreams: *ports\n").getBytes(UTF_8));
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(YAMLFileScannerPlugin.PROPERTY_COMPACT_SEQUENCES, "true");
+        properties.put(YAMLFileScannerPlugin.PROPERTY_SHARE_ALIASES, "true");
+
+        getScanner(properties).scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> upstreams = query("MATCH (k:YAML:Key {fqn: 'proxy.upstreams'}) RETURN k").getColumn("k");
+
+        assertThat(upstreams, hasSize(1));
+        assertThat(upstreams.get(0).getItems(), arrayContaining("80", "443"));
+        assertThat(query("MATCH (v:YAML:Value) RETURN count(v) AS count").getColumn("count"), contains(0L));
+    }
+
+    @Test
+    void mappingsAndSequencesOfKeysAtTheFoldDepthAreWrittenAsJSON(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("deployment.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("kind: Deployment\n" +
+                                        "spec:\n" +
+                                        "  replicas: 2\n" +
+                                        "  template:\n" +
+                                        "    containers:\n" +
+                                        "      - name: web\n" +
+                                        "        args: [--port, \"8080\"]\n" +
+                                        "  selector: {}\n").getBytes(UTF_8));
+
+        YAMLFileDescriptor file = getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_FOLD_DEPTH, "2"))
+             .scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat(file.isValid(), is(true));
+
+        YAMLKeyDescriptor spec = findKeyByName(file.getDocuments().get(0).getKeys(), "spec");
+        YAMLKeyDescriptor template = findKeyByName(spec.getKeys(), "template");
+
+        assertThat(spec.getJson(), nullValue());
+        assertThat(findKeyByName(spec.getKeys(), "replicas").getJson(), nullValue());
+        assertThat(findValueByValue(findKeyByName(spec.getKeys(), "replicas").getValues(), "2"), notNullValue());
+        assertThat(template.getJson(),
+                   equalTo("{\"containers\":[{\"name\":\"web\",\"args\":[\"--port\",\"8080\"]}]}"));
+        assertThat(template.getKeys(), empty());
+        assertThat(template.getValues(), empty());
+        assertThat(findKeyByName(spec.getKeys(), "selector").getJson(), equalTo("{}"));
+
+        List<Long> keys = query("MATCH (k:YAML:Key) RETURN count(k) AS count").getColumn("count");
+
+        assertThat(keys, contains(5L));
+    }
+
+    @Test
+    void aliasesInAndOfKeysMatchingAFoldPatternAreWrittenAsJSON(@TempDir Path directory) throws IOException {
+        File yamlFile = directory.resolve("crd.yaml").toFile();
+
+        Files.write(yamlFile.toPath(), ("definitions:\n" +
+                                        "  port: &port {type: integer}\n" +
+                                        "versions:\n" +
+                                        "  - name: v1\n" +
+                                        "    schema:\n" +
+                                        "      openAPIV3Schema:\n" +
+                                        "        properties:\n" +
+                                        "          port: *port\n" +
+                                        "          targetPort: *port\n").getBytes(UTF_8));
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(YAMLFileScannerPlugin.PROPERTY_FOLD, "**.openAPIV3Schema");
+        properties.put(YAMLFileScannerPlugin.PROPERTY_SHARE_ALIASES, "true");
+
+        getScanner(properties).scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        List<YAMLKeyDescriptor> schemas =
+             query("MATCH (k:YAML:Key {fqn: 'versions.schema.openAPIV3Schema'}) RETURN k").getColumn("k");
+
+        assertThat(schemas, hasSize(1));
+        assertThat(schemas.get(0).getJson(), equalTo("{\"properties\":{\"port\":{\"type\":\"integer\"}," +
+                                                     "\"targetPort\":{\"type\":\"integer\"}}}"));
+        assertThat(schemas.get(0).getKeys(), empty());
+        assertThat(query("MATCH (k:YAML:Key {name: 'type'}) RETURN count(k) AS count").getColumn("count"),
+                   contains(1L));
+    }
+
     @Test
     void ifParsingFailsThePropertyInvalidWillBeTrue() {
         String fileName = "hostconfig-invalid.yaml";
@@ -822,9 +1827,64 @@ class YAMLFileScannerPluginIT extends AbstractPluginIT {
         YAMLFileDescriptor fileDescriptor = fileDescriptors.get(0);
 
         assertThat(fileDescriptor.isValid(), is(false));
+        assertThat(fileDescriptor.getReason(), containsString("document starting at line 4"));
 
-        List<Map<String, Object>> rows = query(format("MATCH (f:YAML:File)-[*]->(c) WHERE f.fileName=~'.*/%s' RETURN c", fileName)).getRows();
+        List<YAMLDocumentDescriptor> invalid = query(format("MATCH (f:YAML:File)-[:CONTAINS_DOCUMENT]->(d) " +
+                                                            "WHERE f.fileName=~'.*/%s' AND d.valid = false " +
+                                                            "RETURN d", fileName)).getColumn("d");
 
-        assertThat(rows, empty());
+        assertThat(invalid, hasSize(1));
+        assertThat(invalid.get(0).getReason(), equalTo(fileDescriptor.getReason()));
+        assertThat(invalid.get(0).getKeys(), empty());
+
+        List<String> keys = query(format("MATCH (f:YAML:File)-[*]->(k:Key) WHERE f.fileName=~'.*/%s' " +
+                                         "RETURN k.fqn AS fqn", fileName)).getColumn("fqn");
+
+        assertThat(keys, containsInAnyOrder("server", "server.name"));
+    }
+
+    @Test
+    void documentsAfterADocumentWhichCannotBeParsedAreScanned(@TempDir Path directory) throws IOException {
+        YAMLFileDescriptor file = scan(directory, "a: b\n---\nc: [d\n---\ne: f\n...\ng: h\n", emptyMap());
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(true, false, true, true));
+
+        List<String> keys = query("MATCH (:YAML:Document {valid: true})-[:CONTAINS_KEY]->(k:YAML:Key) " +
+                                  "RETURN k.fqn AS fqn").getColumn("fqn");
+
+        assertThat(keys, containsInAnyOrder("a", "e", "g"));
+        assertThat(query("MATCH (:YAML:Document {valid: false})-[*]->(n) RETURN n").getRows(), empty());
+    }
+
+    @Test
+    void unterminatedQuotedScalarFailsOnlyItsOwnDocument(@TempDir Path directory) throws IOException {
+        YAMLFileDescriptor file = scan(directory, "a: \"unterminated\n---\nb: 2\n---\nc: 3\n", emptyMap());
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(false, true, true));
+        assertThat(query("MATCH (k:YAML:Key) RETURN k.fqn AS fqn").getColumn("fqn"), containsInAnyOrder("b", "c"));
+    }
+
+    @Test
+    void documentsAfterADocumentWhichCannotBeParsedAreScannedInLoadMode(@TempDir Path directory)
+         throws IOException {
+        YAMLFileDescriptor file = scan(directory, "a: b\n---\nc: [d\n---\ne: f\n",
+                                       singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "false"));
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(true, false, true));
+        assertThat(query("MATCH (k:YAML:Key) RETURN k.fqn AS fqn").getColumn("fqn"), containsInAnyOrder("a", "e"));
+    }
+
+    @Test
+    void documentsAfterADocumentWhichCannotBeConstructedAreScannedInLoadMode(@TempDir Path directory)
+         throws IOException {
+        YAMLFileDescriptor file = scan(directory, "a: &x [1, !!int abc]\n---\nb: &x [2]\nc: *x\n", emptyMap());
+
+        assertThat(file.isValid(), is(false));
+        assertThat(validityOf(file.getDocuments()), contains(false, true));
+        assertThat(query("MATCH (k:YAML:Key)-[:CONTAINS_VALUE]->(v:YAML:Value) RETURN k.fqn + '=' + v.value AS entry")
+                        .getColumn("entry"), containsInAnyOrder("b=2", "c=2"));
     }
 }
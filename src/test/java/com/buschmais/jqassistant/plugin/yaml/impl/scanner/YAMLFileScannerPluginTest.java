@@ -1,15 +1,48 @@
 package com.buschmais.jqassistant.plugin.yaml.impl.scanner;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
 
 import com.buschmais.jqassistant.core.scanner.api.DefaultScope;
+import com.buschmais.jqassistant.core.scanner.api.Scanner;
+import com.buschmais.jqassistant.core.scanner.api.ScannerContext;
+import com.buschmais.jqassistant.core.store.api.Store;
+import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
 import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLDocumentDescriptor;
+import com.buschmais.jqassistant.plugin.yaml.api.model.YAMLFileDescriptor;
+import com.buschmais.xo.api.Query;
+import com.buschmais.xo.api.Query.Result.CompositeRowObject;
+import com.buschmais.xo.api.ResultIterator;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class YAMLFileScannerPluginTest {
 
@@ -22,4 +55,263 @@ class YAMLFileScannerPluginTest {
         assertThat(plugin.accepts(mock(FileResource.class), "/test.xml", DefaultScope.NONE), equalTo(false));
     }
 
+    @Test
+    void streamingScanConsumesTheInputIncrementally() throws IOException {
+        int numberOfKeys = 100_000;
+        GeneratingInputStream in = new GeneratingInputStream(numberOfKeys);
+        int[] createdKeys = {0};
+        long[] maxReadAhead = {0};
+        YAMLFileDescriptor fileDescriptor = mock(YAMLFileDescriptor.class);
+
+        // Plain proxies instead of mocks, as mocks would record every single invocation
+        Store store = stub(Store.class, (proxy, method, args) -> {
+            if ("executeQuery".equals(method.getName())) {
+                Map<?, ?> parameters = (Map<?, ?>) args[1];
+
+                if (parameters.containsKey("relations")) {
+                    return result(1, ((List<?>) parameters.get("relations")).size());
+                }
+
+                List<?> rows = (List<?>) parameters.values().iterator().next();
+
+                if (((String) args[0]).contains(":Key")) {
+                    createdKeys[0] += rows.size();
+                    maxReadAhead[0] = Math.max(maxReadAhead[0], in.bytesRead -
+                                                                (long) createdKeys[0] * GeneratingInputStream.LINE_LENGTH);
+                }
+                return result(rows.size(), 0);
+            }
+            if ("create".equals(method.getName())) {
+                return stub((Class<?>) args[0], DESCRIPTOR);
+            }
+            return "addDescriptorType".equals(method.getName()) ? fileDescriptor : null;
+        });
+        FileDescriptor currentDescriptor = mock(FileDescriptor.class);
+        ScannerContext context = stub(ScannerContext.class, (proxy, method, args) ->
+             "getStore".equals(method.getName()) ? store : currentDescriptor);
+        Scanner scanner = stub(Scanner.class, (proxy, method, args) -> context);
+        FileResource item = mock(FileResource.class);
+
+        doReturn(in).when(item).createStream();
+        doReturn(new DiscardingList<YAMLDocumentDescriptor>()).when(fileDescriptor).getDocuments();
+
+        // Written in parts, as the file has more keys and values than staged in memory
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true");
+        properties.put(YAMLFileScannerPlugin.PROPERTY_STAGING_LIMIT, "1000");
+        plugin.configure(context, properties);
+        YAMLFileDescriptor result = plugin.scan(item, "/large.yaml", DefaultScope.NONE, scanner);
+
+        assertThat(result, sameInstance(fileDescriptor));
+        verify(fileDescriptor).setValid(true);
+        assertThat(createdKeys[0], equalTo(numberOfKeys));
+        // The parser must not read more than a few buffers ahead of the emitter
+        assertThat(maxReadAhead[0], lessThan(64L * 1024L));
+    }
+
+    @Test
+    void failedScanDoesNotWriteToTheStore() throws IOException {
+        int[] queries = {0};
+        YAMLFileDescriptor fileDescriptor = mock(YAMLFileDescriptor.class);
+        Store store = stub(Store.class, (proxy, method, args) -> {
+            if ("executeQuery".equals(method.getName()) || "create".equals(method.getName())) {
+                queries[0]++;
+            }
+            return "addDescriptorType".equals(method.getName()) ? fileDescriptor : null;
+        });
+        FileDescriptor currentDescriptor = mock(FileDescriptor.class);
+        ScannerContext context = stub(ScannerContext.class, (proxy, method, args) ->
+             "getStore".equals(method.getName()) ? store : currentDescriptor);
+        Scanner scanner = stub(Scanner.class, (proxy, method, args) -> context);
+        FileResource item = mock(FileResource.class);
+
+        doReturn(new ByteArrayInputStream("a: b\nc: [d, e]\n---\nf: [g\n".getBytes(UTF_8))).when(item).createStream();
+        doReturn(new DiscardingList<YAMLDocumentDescriptor>()).when(fileDescriptor).getDocuments();
+
+        // Exceeding a limit fails the whole file, unlike a document which cannot be parsed
+        plugin.configure(context, singletonMap(YAMLFileScannerPlugin.PROPERTY_MAX_NODES, "3"));
+        plugin.scan(item, "/invalid.yaml", DefaultScope.NONE, scanner);
+
+        verify(fileDescriptor).setValid(false);
+        assertThat(queries[0], equalTo(0));
+    }
+
+    @Test
+    void scanFailsIfNodesOfRelationsAreNotFound() throws IOException {
+        YAMLFileDescriptor fileDescriptor = mock(YAMLFileDescriptor.class);
+        Store store = stub(Store.class, (proxy, method, args) -> {
+            if ("executeQuery".equals(method.getName())) {
+                Map<?, ?> parameters = (Map<?, ?>) args[1];
+
+                // The store finds none of the nodes, so that no relation is created
+                return parameters.containsKey("relations") ? result(1, 0)
+                                                           : result(((List<?>) parameters.get("nodes")).size(), 0);
+            }
+            if ("create".equals(method.getName())) {
+                return stub((Class<?>) args[0], DESCRIPTOR);
+            }
+            return "addDescriptorType".equals(method.getName()) ? fileDescriptor : null;
+        });
+        FileDescriptor currentDescriptor = mock(FileDescriptor.class);
+        ScannerContext context = stub(ScannerContext.class, (proxy, method, args) ->
+             "getStore".equals(method.getName()) ? store : currentDescriptor);
+        Scanner scanner = stub(Scanner.class, (proxy, method, args) -> context);
+        FileResource item = mock(FileResource.class);
+
+        doReturn(new ByteArrayInputStream("a: b\n".getBytes(UTF_8))).when(item).createStream();
+        doReturn(new DiscardingList<YAMLDocumentDescriptor>()).when(fileDescriptor).getDocuments();
+
+        plugin.configure(context, emptyMap());
+        plugin.scan(item, "/a.yaml", DefaultScope.NONE, scanner);
+
+        verify(fileDescriptor).setValid(false);
+        verify(fileDescriptor).setReason(startsWith("Created 0 of 1 relations"));
+    }
+
+    @Test
+    void rescanOfAnUnchangedLocalFileDoesNotParseIt() throws IOException {
+        byte[] content = "a: b\nc: [d, e]\n".getBytes(UTF_8);
+        int[] queries = {0};
+        YAMLFileDescriptor fileDescriptor = mock(YAMLFileDescriptor.class);
+        Store store = stub(Store.class, (proxy, method, args) -> {
+            if ("executeQuery".equals(method.getName())) {
+                Map<?, ?> parameters = (Map<?, ?>) args[1];
+
+                queries[0]++;
+                return parameters.containsKey("relations")
+                       ? result(1, ((List<?>) parameters.get("relations")).size())
+                       : result(((List<?>) parameters.values().iterator().next()).size(), 0);
+            }
+            if ("create".equals(method.getName())) {
+                queries[0]++;
+                return stub((Class<?>) args[0], DESCRIPTOR);
+            }
+            return "addDescriptorType".equals(method.getName()) ? fileDescriptor : null;
+        });
+        FileDescriptor currentDescriptor = mock(FileDescriptor.class);
+        ScannerContext context = stub(ScannerContext.class, (proxy, method, args) ->
+             "getStore".equals(method.getName()) ? store : currentDescriptor);
+        Scanner scanner = stub(Scanner.class, (proxy, method, args) -> context);
+        FileResource item = mock(FileResource.class);
+        ArgumentCaptor<String> settings = ArgumentCaptor.forClass(String.class);
+
+        doAnswer(invocation -> new ByteArrayInputStream(content)).when(item).createStream();
+        doReturn(new DiscardingList<YAMLDocumentDescriptor>()).when(fileDescriptor).getDocuments();
+
+        plugin.configure(context, emptyMap());
+        plugin.scan(item, "/a.yaml", DefaultScope.NONE, scanner);
+        verify(fileDescriptor).setValid(true);
+        verify(fileDescriptor).setSettings(settings.capture());
+
+        doReturn(settings.getValue()).when(fileDescriptor).getSettings();
+        doReturn(YAMLFileScannerPlugin.toHex(YAMLFileScannerPlugin.md5Digest().digest(content)))
+             .when(fileDescriptor).getMd5();
+        clearInvocations(item, fileDescriptor);
+        queries[0] = 0;
+
+        YAMLFileDescriptor result = plugin.scan(item, "/a.yaml", DefaultScope.NONE, scanner);
+
+        assertThat(result, sameInstance(fileDescriptor));
+        // The file is read once for its hash, but neither parsed nor written
+        verify(item, times(1)).createStream();
+        verify(fileDescriptor, never()).setValid(anyBoolean());
+        verify(fileDescriptor, never()).getDocuments();
+        assertThat(queries[0], equalTo(0));
+    }
+
+    /**
+     * Handler for descriptor stubs, which discard all added relations.
+     */
+    private static final InvocationHandler DESCRIPTOR = (proxy, method, args) -> {
+        if (List.class.equals(method.getReturnType())) {
+            return new DiscardingList<>();
+        }
+        if ("getId".equals(method.getName())) {
+            return 0L;
+        }
+        return method.getReturnType().equals(int.class) ? 0 : null;
+    };
+
+    /**
+     * Creates the result of a query creating the given number of nodes, or
+     * of relations if there is a single row.
+     */
+    private static Query.Result<?> result(int rows, long created) {
+        PrimitiveIterator.OfInt indexes = IntStream.range(0, rows).iterator();
+
+        InvocationHandler iterator = (proxy, method, args) -> {
+            if ("hasNext".equals(method.getName())) {
+                return indexes.hasNext();
+            }
+            if ("next".equals(method.getName())) {
+                int index = indexes.next();
+
+                return stub(CompositeRowObject.class, (row, get, column) -> {
+                    if ("index".equals(column[0])) {
+                        return index;
+                    }
+                    return "created".equals(column[0]) ? created : 0L;
+                });
+            }
+            return null;
+        };
+
+        return stub(Query.Result.class, (proxy, method, args) ->
+             "iterator".equals(method.getName()) ? stub(ResultIterator.class, iterator) : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Generates a YAML document with the given number of keys on
+     * the fly without holding it in memory.
+     */
+    private static class GeneratingInputStream extends InputStream {
+        private static final int LINE_LENGTH = "key0000000: value0000000\n".length();
+
+        private final int lines;
+        private byte[] line = new byte[0];
+        private int lineIndex = 0;
+        private int position = 0;
+        private long bytesRead = 0;
+
+        GeneratingInputStream(int lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public int read() {
+            if (position == line.length) {
+                if (lineIndex == lines) {
+                    return -1;
+                }
+                line = String.format("key%07d: value%07d\n", lineIndex, lineIndex).getBytes();
+                lineIndex++;
+                position = 0;
+            }
+            bytesRead++;
+            return line[position++];
+        }
+    }
+
+    private static class DiscardingList<T> extends AbstractList<T> {
+        @Override
+        public boolean add(T element) {
+            return true;
+        }
+
+        @Override
+        public T get(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
 }
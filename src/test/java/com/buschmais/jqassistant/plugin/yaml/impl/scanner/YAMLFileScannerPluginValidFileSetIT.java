@@ -12,6 +12,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import static java.util.Collections.singletonMap;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -24,6 +25,7 @@ class YAMLFileScannerPluginValidFileSetIT extends AbstractPluginIT {
              "/probes/valid/two-simple-key-value-pairs.yaml",
              "/probes/valid/simple-list.yaml",
              "/probes/valid/dropwizard-configuration.yaml",
+             "/probes/valid/anchored-mapping.yaml",
              "/probes/yamlspec/1.1/sec-2.1-example-2.1-sequence-of-scalars.yaml",
              "/probes/yamlspec/1.1/sec-2.1-example-2.2-scalars-of-scalars.yaml",
              "/probes/yamlspec/1.1/sec-2.1-example-2.3-mapping-scalars-to-sequences.yaml",
@@ -76,4 +78,16 @@ class YAMLFileScannerPluginValidFileSetIT extends AbstractPluginIT {
                    descriptor, notNullValue());
     }
 
+    @MethodSource("data")
+    @ParameterizedTest
+    void canLoadYAMLFileInStreamingMode(String pathToYAMLFile) {
+        File yamlFile = new File(getClassesDirectory(YAMLFileScannerPluginValidFileSetIT.class), pathToYAMLFile);
+
+        Scanner scanner = getScanner(singletonMap(YAMLFileScannerPlugin.PROPERTY_STREAMING, "true"));
+        YAMLFileDescriptor descriptor = scanner.scan(yamlFile, yamlFile.getAbsolutePath(), null);
+
+        assertThat("Scanner must be able to scan the resource and to return a descriptor.",
+                   descriptor, notNullValue());
+    }
+
 }